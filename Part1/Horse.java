@@ -1,4 +1,4 @@
-import java.text.DecimalFormat;
+import java.math.BigDecimal;
 
 /**
  * A horse with a name, a symbol, a distance travelled, a fallen status, and a confidence level.
@@ -15,6 +15,22 @@ public class Horse
     private boolean fallen;
     private double confidence;
 
+    // the nearest double to each halfway point between two tenths (0.05,
+    // 0.15, ... 0.95) and whether it is above (1), below (-1) or exactly on
+    // (0) the real halfway point, used to round confidences to one decimal
+    // place the same way DecimalFormat("#.0") does
+    private static final double[] HALFWAY = new double[10];
+    private static final int[] HALFWAY_SIDE = new int[10];
+
+    static
+    {
+        for (int k = 0; k < 10; k++) {
+            BigDecimal exact = BigDecimal.valueOf((2 * k) + 1, 0).divide(BigDecimal.valueOf(20));
+            HALFWAY[k] = exact.doubleValue();
+            HALFWAY_SIDE[k] = new BigDecimal(HALFWAY[k]).compareTo(exact);
+        }
+    }
+
 
 
 
@@ -75,15 +91,39 @@ public class Horse
 
     public void setConfidence(double newConfidence)
     {
-        DecimalFormat df = new DecimalFormat("#.0");
-
         if (newConfidence > 1.0) {
             newConfidence = 1.0;
-        } else if (newConfidence < 0.0) {
+        } else if (!(newConfidence > 0.0)) {
             newConfidence = 0.0;
         }
 
-        this.confidence = Double.valueOf(df.format(newConfidence));
+        this.confidence = toTenths(newConfidence) / 10.0;
+    }
+
+    /**
+     * Rounds a confidence between 0 and 1 to a whole number of tenths, rounding
+     * half-even on the exact value of the double like DecimalFormat("#.0"),
+     * but without creating any objects
+     */
+    private static int toTenths(double confidence)
+    {
+        // start from a guess and move it until it is right, at most one step
+        int tenths = (int) ((confidence * 10) + 0.5);
+        while (tenths > 0 && !isAboveHalfway(confidence, tenths - 1)) {
+            tenths--;
+        }
+        while (tenths < 10 && isAboveHalfway(confidence, tenths)) {
+            tenths++;
+        }
+        return tenths;
+    }
+
+    private static boolean isAboveHalfway(double confidence, int k)
+    {
+        if (confidence != HALFWAY[k]) {
+            return confidence > HALFWAY[k];
+        }
+        return HALFWAY_SIDE[k] > 0 || (HALFWAY_SIDE[k] == 0 && k % 2 == 1);
     }
     
     public void setSymbol(char newSymbol)
@@ -6,6 +6,7 @@ import javax.swing.*;
 import java.awt.*;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.SplittableRandom;
 
 /**
  * A three-horse race, each horse running in its own lane
@@ -18,6 +19,10 @@ public class Race {
     private int raceLength;
     private List<Horse> horses;
     private int laneAmount;
+    private SplittableRandom seeds; // every race gets its own generator split from this one
+    private SplittableRandom random; // the generator of the race being run
+    private TerminalRenderer renderer; // draws the race being run
+    private int lastRaceTicks; // how many ticks the last race without display took
 
     /**
      * Constructor for objects of class Race
@@ -26,10 +31,23 @@ public class Race {
      * @param distance the length of the racetrack (in metres/yards...)
      */
     public Race(int distance) {
+        this(distance, new SplittableRandom().nextLong());
+    }
+
+    /**
+     * Constructor for objects of class Race
+     * Initially there are no horses in the lanes.
+     * Races with the same seed (and the same horses) always run the same way
+     * 
+     * @param distance the length of the racetrack (in metres/yards...)
+     * @param seed     the seed for the random moves and falls of every race
+     */
+    public Race(int distance, long seed) {
         // initialise instance variables
         raceLength = distance;
         laneAmount = 2; // default 2 lanes (minimum 2 horses)
         horses = new ArrayList<Horse>();
+        seeds = new SplittableRandom(seed);
     }
 
     /**
@@ -38,7 +56,7 @@ public class Race {
      * @param theHorse   the horse to be added to the race
      * @param laneNumber the lane that the horse will be added to
      */
-    private void addHorse(Horse theHorse) {
+    public void addHorse(Horse theHorse) {
         horses.add(theHorse);
     }
 
@@ -124,6 +142,16 @@ public class Race {
             horse.goBackToStart();
         }
 
+        // each race has its own random number generator
+        random = seeds.split();
+
+        // the track, one row per lane, with the horse's name and confidence after it
+        int nameWidth = 0;
+        for (Horse horse : horses) {
+            nameWidth = Math.max(nameWidth, horse.getName().length());
+        }
+        renderer = new TerminalRenderer(laneAmount + 2, raceLength + 3 + nameWidth + 26);
+
         while (!finished) {
             // move each horse
             for (Horse horse : horses) {
@@ -139,12 +167,14 @@ public class Race {
             for (Horse horse : horses) {
                 if (horse != null && raceWonBy(horse)) {
                     finished = true;
+                    renderer.finish();
                     System.out.println("And the winner is " + horse.getName() + " ");
                 }
             }
 
             if (allHorsesHaveFallen()) {
                 finished = true;
+                renderer.finish();
             }
 
             // wait for 100 milliseconds
@@ -156,6 +186,41 @@ public class Race {
         }
     }
 
+    /**
+     * Runs one race as fast as possible, without printing it or waiting
+     * between ticks, for batch runs. The horses move exactly as they do in
+     * startRaceGameLoop. If two horses finish on the same tick, the one added
+     * first wins.
+     * 
+     * @return the winning horse, or null if every horse fell
+     */
+    public Horse runRaceWithoutDisplay() {
+        for (Horse horse : horses) {
+            horse.goBackToStart();
+        }
+        random = seeds.split();
+
+        lastRaceTicks = 0;
+        while (true) {
+            lastRaceTicks++;
+            for (Horse horse : horses) {
+                moveHorse(horse);
+            }
+            for (Horse horse : horses) {
+                if (raceWonBy(horse)) {
+                    return horse;
+                }
+            }
+            if (allHorsesHaveFallen()) {
+                return null;
+            }
+        }
+    }
+
+    public int getLastRaceTicks() {
+        return lastRaceTicks;
+    }
+
     private boolean allHorsesHaveFallen() {
         for (Horse horse : horses) {
             if (horse != null && !horse.hasFallen()) {
@@ -294,7 +359,7 @@ public class Race {
 
         if (!theHorse.hasFallen()) {
             // the probability that the horse will move forward depends on the confidence;
-            if (Math.random() < theHorse.getConfidence()) {
+            if (random.nextDouble() < theHorse.getConfidence()) {
                 theHorse.moveForward();
                 changeHorseConfidence(theHorse);
             }
@@ -302,7 +367,7 @@ public class Race {
             // the probability that the horse will fall is very small (max is 0.1)
             // but will also will depends exponentially on confidence
             // so if you double the confidence, the probability that it will fall is *2
-            if (Math.random() < (0.1 * theHorse.getConfidence() * theHorse.getConfidence())) {
+            if (random.nextDouble() < (0.1 * theHorse.getConfidence() * theHorse.getConfidence())) {
                 theHorse.fall();
                 changeHorseConfidence(theHorse);
             }
@@ -329,26 +394,30 @@ public class Race {
     }
 
     /***
-     * Print the race on the terminal
+     * Print the race on the terminal. The whole track is drawn into the
+     * renderer's frame and then written in one go, and only the parts that
+     * have changed since the last tick are sent to the terminal
      */
     private void printRace() {
-        System.out.print('\u000C'); // clear the terminal window
+        renderer.clear();
 
-        multiplePrint('=', raceLength + 3); // top edge of track
-        System.out.println();
+        renderer.fill(0, 0, '=', raceLength + 3); // top edge of track
 
+        int row = 1;
         for (Horse horse : horses) {
             if (horse != null) {
-                printLane(horse);
-                System.out.println();
+                printLane(row, horse);
+                row++;
             }
         }
         for (int i = 0; i < laneAmount - horses.size(); i++) {
-            printEmptyLane();
+            printEmptyLane(row);
+            row++;
         }
 
-        multiplePrint('=', raceLength + 3); // bottom edge of track
-        System.out.println();
+        renderer.fill(row, 0, '=', raceLength + 3); // bottom edge of track
+
+        renderer.render();
     }
 
     /**
@@ -357,62 +426,28 @@ public class Race {
      * | X |
      * to show how far the horse has run
      */
-    private void printLane(Horse theHorse) {
-        // calculate how many spaces are needed before
-        // and after the horse
-        int spacesBefore = theHorse.getDistanceTravelled();
-        int spacesAfter = raceLength - theHorse.getDistanceTravelled();
-
-        // print a | for the beginning of the lane
-        System.out.print('|');
-
-        // print the spaces before the horse
-        multiplePrint(' ', spacesBefore);
+    private void printLane(int row, Horse theHorse) {
+        // print a | for the beginning and the end of the lane,
+        // the spaces in between are already blank
+        renderer.put(row, 0, '|');
+        renderer.put(row, raceLength + 2, '|');
 
         // if the horse has fallen then print dead
         // else print the horse's symbol
         if (theHorse.hasFallen()) {
-            System.out.print('\u2322');
+            renderer.put(row, theHorse.getDistanceTravelled() + 1, '\u2322');
         } else {
-            System.out.print(theHorse.getSymbol());
+            renderer.put(row, theHorse.getDistanceTravelled() + 1, theHorse.getSymbol());
         }
 
-        // print the spaces after the horse
-        multiplePrint(' ', spacesAfter);
-
-        // print the | for the end of the track
-        System.out.print('|');
-
         // print the horse's name and confidence
-        System.out.print(" " + theHorse.getName() + " (Current confidence "
+        renderer.print(row, raceLength + 3, " " + theHorse.getName() + " (Current confidence "
                 + String.format("%.1f", theHorse.getConfidence()) + ")");
     }
 
-    private void printEmptyLane() {
-        // print a | for the beginning of the lane
-        System.out.print('|');
-
-        // print the spaces for the entire lane
-        multiplePrint(' ', raceLength + 1);
-
-        // print the | for the end of the track
-        System.out.print('|');
-
-        // print a newline to move to the next line
-        System.out.println();
-    }
-
-    /***
-     * print a character a given number of times.
-     * e.g. printmany('x',5) will print: xxxxx
-     * 
-     * @param aChar the character to Print
-     */
-    private void multiplePrint(char aChar, int times) {
-        int i = 0;
-        while (i < times) {
-            System.out.print(aChar);
-            i = i + 1;
-        }
+    private void printEmptyLane(int row) {
+        // print a | for the beginning and the end of the lane
+        renderer.put(row, 0, '|');
+        renderer.put(row, raceLength + 2, '|');
     }
 }
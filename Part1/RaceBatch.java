@@ -0,0 +1,178 @@
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Runs many races back to back without asking for any input, printing the
+ * race or waiting between ticks, and prints only the totals at the end.
+ *
+ * The settings come from a properties file, from key=value arguments, or
+ * both (the arguments win):
+ *
+ * <pre>
+ * java main race.properties
+ * java main length=50 races=100000 seed=1 horse.1=A,Alpha,0.6 horse.2=B,Bravo,0.5
+ * </pre>
+ *
+ * <ul>
+ * <li>length: the length of the track (default 20)</li>
+ * <li>races: how many races to run (default 1000)</li>
+ * <li>seed: the seed for the random moves, so a batch can be run again
+ * (default random)</li>
+ * <li>horse.1 to horse.12: a horse as symbol,name,confidence (at least 2)</li>
+ * <li>carryConfidence: true to keep each horse's confidence from one race to
+ * the next, as the interactive game does (default false, every race starts
+ * from the confidences given)</li>
+ * </ul>
+ *
+ * @author Rahman Imtiaz
+ * @version 1.0
+ */
+public class RaceBatch {
+    private static final int MAX_HORSES = 12;
+
+    private final int raceLength;
+    private final long races;
+    private final long seed;
+    private final List<Horse> horses = new ArrayList<>();
+    private final double[] startConfidences;
+    private final boolean carryConfidence;
+
+    /**
+     * Constructor for objects of class RaceBatch
+     *
+     * @param settings the settings, as described above
+     */
+    public RaceBatch(Properties settings) {
+        raceLength = Integer.parseInt(settings.getProperty("length", "20"));
+        races = Long.parseLong(settings.getProperty("races", "1000"));
+        String seedText = settings.getProperty("seed");
+        seed = seedText != null ? Long.parseLong(seedText) : System.nanoTime();
+        carryConfidence = Boolean.parseBoolean(settings.getProperty("carryConfidence", "false"));
+        if (raceLength < 1) {
+            throw new IllegalArgumentException("length must be at least 1");
+        }
+        if (races < 1) {
+            throw new IllegalArgumentException("races must be at least 1");
+        }
+
+        for (int i = 1; i <= MAX_HORSES; i++) {
+            String horse = settings.getProperty("horse." + i);
+            if (horse != null) {
+                horses.add(parseHorse("horse." + i, horse));
+            }
+        }
+        if (horses.size() < 2) {
+            throw new IllegalArgumentException("at least 2 horses are needed, as horse.1=A,Alpha,0.6");
+        }
+        startConfidences = new double[horses.size()];
+        for (int i = 0; i < startConfidences.length; i++) {
+            startConfidences[i] = horses.get(i).getConfidence();
+        }
+    }
+
+    private static Horse parseHorse(String key, String value) {
+        String[] parts = value.split(",", 3);
+        if (parts.length != 3 || parts[0].trim().isEmpty()) {
+            throw new IllegalArgumentException(key + " should be symbol,name,confidence");
+        }
+        double confidence = Double.parseDouble(parts[2].trim());
+        if (!(confidence >= 0 && confidence <= 1)) {
+            throw new IllegalArgumentException(key + " needs a confidence between 0 and 1");
+        }
+        return new Horse(parts[0].trim().charAt(0), parts[1].trim(), confidence);
+    }
+
+    /**
+     * Reads the settings from the arguments: a file name loads a properties
+     * file, and key=value sets one setting.
+     *
+     * @param args the command line arguments
+     * @return the settings
+     * @throws IOException if a properties file cannot be read
+     */
+    public static Properties readSettings(String[] args) throws IOException {
+        Properties settings = new Properties();
+        for (String arg : args) {
+            if (!arg.contains("=")) {
+                try (Reader reader = new FileReader(arg)) {
+                    settings.load(reader);
+                }
+            }
+        }
+        for (String arg : args) {
+            int equals = arg.indexOf('=');
+            if (equals > 0) {
+                settings.setProperty(arg.substring(0, equals).trim(), arg.substring(equals + 1).trim());
+            }
+        }
+        return settings;
+    }
+
+    public static void main(String[] args) {
+        try {
+            new RaceBatch(readSettings(args)).run();
+        } catch (IOException | IllegalArgumentException e) {
+            System.out.println("Error: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Runs every race and prints the totals.
+     */
+    public void run() {
+        Race race = new Race(raceLength, seed);
+        for (Horse horse : horses) {
+            race.addHorse(horse);
+        }
+
+        long[] wins = new long[horses.size()];
+        long[] falls = new long[horses.size()];
+        long allFallen = 0;
+        long winningTicks = 0;
+
+        long start = System.nanoTime();
+        for (long i = 0; i < races; i++) {
+            if (!carryConfidence) {
+                for (int lane = 0; lane < horses.size(); lane++) {
+                    horses.get(lane).setConfidence(startConfidences[lane]);
+                }
+            }
+
+            Horse winner = race.runRaceWithoutDisplay();
+            if (winner == null) {
+                allFallen++;
+            } else {
+                wins[horses.indexOf(winner)]++;
+                winningTicks += race.getLastRaceTicks();
+            }
+            for (int lane = 0; lane < horses.size(); lane++) {
+                if (horses.get(lane).hasFallen()) {
+                    falls[lane]++;
+                }
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("%,d races of length %d (seed %d) in %.2f s, %,.0f races/s%n", races,
+                raceLength, seed, seconds, races / seconds));
+        report.append(String.format("%-4s %-20s %12s %8s %12s %8s%n", "Lane", "Horse", "Wins", "Win %", "Falls",
+                "Fall %"));
+        for (int lane = 0; lane < horses.size(); lane++) {
+            Horse horse = horses.get(lane);
+            report.append(String.format("%-4d %-20s %,12d %7.2f%% %,12d %7.2f%%%n", lane + 1,
+                    horse.getSymbol() + " " + horse.getName(), wins[lane], 100.0 * wins[lane] / races, falls[lane],
+                    100.0 * falls[lane] / races));
+        }
+        report.append(String.format("All horses fell: %,d (%.2f%%)%n", allFallen, 100.0 * allFallen / races));
+        if (races > allFallen) {
+            report.append(String.format("Average winning time: %.2f ticks%n",
+                    (double) winningTicks / (races - allFallen)));
+        }
+        System.out.print(report);
+    }
+}
@@ -0,0 +1,259 @@
+import java.io.Console;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.util.Arrays;
+
+/**
+ * Draws frames of text on the terminal without flicker. A frame is built up
+ * in a char buffer, one char per cell, and render then writes only the
+ * cells that have changed since the last frame, moving the cursor to each
+ * changed run with an ANSI escape code. The whole update goes to the
+ * terminal in a single write, so a frame costs one system call however big
+ * the track is, and very little data when only a few horses have moved.
+ *
+ * ANSI escape codes are only used when the output is a terminal known to
+ * understand them (see supportsAnsi). Otherwise, for example when the
+ * output is redirected to a file or on the old Windows console, every frame
+ * is written out in full as plain lines instead.
+ *
+ * The frames are encoded in the terminal's own charset (see outputCharset).
+ * A char that charset has no code for, such as the fallen horse on a
+ * console that is not UTF-8, is drawn as a plain ASCII char instead.
+ *
+ * @author Rahman Imtiaz
+ * @version 1.0
+ */
+public class TerminalRenderer {
+    private static final String ESCAPE = "\u001B[";
+    private static final char FALLEN = '\u2322'; // what Race draws for a horse that has fallen
+
+    private final PrintStream out;
+    private final Charset charset;
+    private final CharsetEncoder encoder; // only used to check which chars can be drawn
+    private final int rows;
+    private final int columns;
+    private final char[] frame; // the frame being built, row by row
+    private final char[] shown; // what the terminal shows now
+    private final StringBuilder output; // reused for every frame
+    private final boolean ansi;
+    private boolean started;
+
+    /**
+     * Constructor for objects of class TerminalRenderer
+     *
+     * @param out     where to write the frames
+     * @param rows    the height of a frame
+     * @param columns the width of a frame
+     * @param ansi    whether the output is a terminal that understands ANSI
+     *                escape codes
+     * @param charset the charset the output is shown in
+     */
+    public TerminalRenderer(PrintStream out, int rows, int columns, boolean ansi, Charset charset) {
+        this.out = out;
+        this.charset = charset;
+        this.encoder = charset.newEncoder();
+        this.rows = rows;
+        this.columns = columns;
+        this.frame = new char[rows * columns];
+        this.shown = new char[rows * columns];
+        this.output = new StringBuilder(rows * (columns + 16));
+        this.ansi = ansi;
+        clear();
+    }
+
+    /**
+     * Constructor for objects of class TerminalRenderer, for output shown in
+     * the terminal's charset (see outputCharset)
+     *
+     * @param out     where to write the frames
+     * @param rows    the height of a frame
+     * @param columns the width of a frame
+     * @param ansi    whether the output is a terminal that understands ANSI
+     *                escape codes
+     */
+    public TerminalRenderer(PrintStream out, int rows, int columns, boolean ansi) {
+        this(out, rows, columns, ansi, outputCharset());
+    }
+
+    /**
+     * Constructor for objects of class TerminalRenderer, drawing on
+     * System.out in its charset, with ANSI escape codes if it supports them
+     *
+     * @param rows    the height of a frame
+     * @param columns the width of a frame
+     */
+    public TerminalRenderer(int rows, int columns) {
+        this(System.out, rows, columns, supportsAnsi());
+    }
+
+    /**
+     * Works out whether System.out is a terminal that understands ANSI
+     * escape codes. Running with -Dansi=true or -Dansi=false decides it
+     * outright. Otherwise there must be a console, and on Windows it must be
+     * Windows Terminal (the old console shows the codes as text unless
+     * something has turned on its VT mode); elsewhere TERM must be set to
+     * something other than "dumb".
+     *
+     * @return true if escape codes can be used
+     */
+    public static boolean supportsAnsi() {
+        String setting = System.getProperty("ansi");
+        if (setting != null) {
+            return Boolean.parseBoolean(setting);
+        }
+        if (System.console() == null) {
+            return false;
+        }
+        if (System.getProperty("os.name", "").startsWith("Windows")) {
+            return System.getenv("WT_SESSION") != null;
+        }
+        String term = System.getenv("TERM");
+        return term != null && !term.equals("dumb");
+    }
+
+    /**
+     * Works out the charset System.out is shown in: the console's if there
+     * is one, otherwise the one Java encodes standard output in, which is
+     * the platform's default unless stdout.encoding says otherwise.
+     *
+     * @return the charset
+     */
+    public static Charset outputCharset() {
+        Console console = System.console();
+        if (console != null) {
+            return console.charset();
+        }
+        String name = System.getProperty("stdout.encoding", System.getProperty("sun.stdout.encoding"));
+        if (name != null) {
+            try {
+                return Charset.forName(name);
+            } catch (IllegalArgumentException e) {
+                // not a charset this Java knows, so use the default
+            }
+        }
+        return Charset.defaultCharset();
+    }
+
+    /**
+     * Blanks the frame being built.
+     */
+    public void clear() {
+        Arrays.fill(frame, ' ');
+    }
+
+    /**
+     * Puts a char in the frame. Anything outside the frame is left out,
+     * and a char the terminal's charset cannot show is put as an ASCII one.
+     *
+     * @param row    the row, from 0
+     * @param column the column, from 0
+     * @param c      the char
+     */
+    public void put(int row, int column, char c) {
+        if (row >= 0 && row < rows && column >= 0 && column < columns) {
+            frame[(row * columns) + column] = c < 0x80 || encoder.canEncode(c) ? c : ascii(c);
+        }
+    }
+
+    // what to draw for a char the terminal's charset cannot show
+    private static char ascii(char c) {
+        return c == FALLEN ? 'X' : '?';
+    }
+
+    /**
+     * Puts a char in the frame a number of times along a row.
+     *
+     * @param row    the row, from 0
+     * @param column the first column, from 0
+     * @param c      the char
+     * @param times  how many times to put it
+     */
+    public void fill(int row, int column, char c, int times) {
+        for (int i = 0; i < times; i++) {
+            put(row, column + i, c);
+        }
+    }
+
+    /**
+     * Puts some text in the frame along a row. Text past the end of the row
+     * is left out.
+     *
+     * @param row    the row, from 0
+     * @param column the first column, from 0
+     * @param text   the text
+     * @return the column after the text
+     */
+    public int print(int row, int column, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            put(row, column + i, text.charAt(i));
+        }
+        return column + text.length();
+    }
+
+    /**
+     * Writes the frame to the terminal, in one write.
+     */
+    public void render() {
+        output.setLength(0);
+        if (!ansi) {
+            for (int row = 0; row < rows; row++) {
+                // without the blanks at the end of the row
+                int length = columns;
+                while (length > 0 && frame[(row * columns) + length - 1] == ' ') {
+                    length--;
+                }
+                output.append(frame, row * columns, length).append(System.lineSeparator());
+            }
+        } else {
+            if (!started) {
+                // clear the screen and hide the cursor for the first frame
+                output.append(ESCAPE).append("2J").append(ESCAPE).append("?25l");
+                started = true;
+            }
+            appendChanges();
+            // leave the cursor under the frame, where any other output should go
+            moveTo(rows, 0);
+        }
+        System.arraycopy(frame, 0, shown, 0, frame.length);
+
+        byte[] bytes = output.toString().getBytes(charset);
+        out.write(bytes, 0, bytes.length);
+        out.flush();
+    }
+
+    // adds each run of changed cells, with a cursor move before it
+    private void appendChanges() {
+        for (int row = 0; row < rows; row++) {
+            int start = row * columns;
+            int column = 0;
+            while (column < columns) {
+                if (frame[start + column] == shown[start + column]) {
+                    column++;
+                    continue;
+                }
+                int runStart = column;
+                while (column < columns && frame[start + column] != shown[start + column]) {
+                    column++;
+                }
+                moveTo(row, runStart);
+                output.append(frame, start + runStart, column - runStart);
+            }
+        }
+    }
+
+    // rows and columns start at 1 in ANSI cursor positions
+    private void moveTo(int row, int column) {
+        output.append(ESCAPE).append(row + 1).append(';').append(column + 1).append('H');
+    }
+
+    /**
+     * Shows the cursor again once the last frame has been drawn.
+     */
+    public void finish() {
+        if (ansi && started) {
+            out.print(ESCAPE + "?25h");
+            out.flush();
+        }
+    }
+}
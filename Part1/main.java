@@ -7,6 +7,11 @@
 public class main {
 
     public static void main(String[] args) {
+        // with settings on the command line, run a batch of races instead of the game
+        if (args.length > 0) {
+            RaceBatch.main(args);
+            return;
+        }
         Race theRace = new Race(20);
         theRace.startRace();
     }
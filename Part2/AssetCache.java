@@ -0,0 +1,226 @@
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+import javax.imageio.ImageIO;
+import javax.swing.ImageIcon;
+import javax.swing.SwingUtilities;
+
+/**
+ * The breed pictures, loaded once and shared by every screen. The PNG files
+ * are read with ImageIO in parallel, on background threads, from when
+ * preload is called (main does so as the program starts) or a picture is
+ * first asked for. Each one is decoded, scaled down to the size the GUI
+ * shows it at and drawn onto its white circle there, so the setup screens
+ * and RaceFrame only ever use finished icons and never decode or scale an
+ * image on the Swing thread.
+ *
+ * Nothing here waits for a picture to load either. Until it has, a blank
+ * placeholder of the same size is given out, and whenLoaded lets a screen
+ * swap in the picture once it is ready.
+ *
+ * The files are looked for on the classpath first and then in the working
+ * directory, where the program has always expected them.
+ *
+ * @author Rahman Imtiaz
+ * @version 1.0
+ */
+
+public final class AssetCache {
+    public static final int ICON_SIZE = 25; // the size breed icons are shown at
+
+    // the breeds, in the order they are offered, and their picture files
+    private static final Map<String, String> BREED_FILES = new LinkedHashMap<>();
+
+    static {
+        BREED_FILES.put("Horse", "horseIcon.png");
+        BREED_FILES.put("Pony", "ponyIcon.png");
+        BREED_FILES.put("Donkey", "donkeyIcon.png");
+        BREED_FILES.put("Unicorn", "unicornIcon.png");
+    }
+
+    private static final ExecutorService LOADERS = Executors.newFixedThreadPool(BREED_FILES.size(), runnable -> {
+        Thread thread = new Thread(runnable, "assets");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // the pictures being loaded, filled in by preload; guarded by the class
+    private static final Map<String, CompletableFuture<BreedIcons>> BREEDS = new LinkedHashMap<>();
+
+    // what is shown in place of a picture that has not loaded yet
+    private static final ImageIcon PLACEHOLDER = new ImageIcon(
+            new BufferedImage(ICON_SIZE, ICON_SIZE, BufferedImage.TYPE_INT_ARGB));
+    private static final ImageIcon PLACEHOLDER_BADGE = makeBadge(PLACEHOLDER);
+
+    // the badge made for each icon, for icons that did not come from the cache
+    private static final Map<ImageIcon, ImageIcon> OTHER_BADGES = Collections.synchronizedMap(new WeakHashMap<>());
+
+    private AssetCache() {
+    }
+
+    /**
+     * Starts loading every picture in the background, if it has not started
+     * already. Calling this early means the pictures are ready by the time
+     * they are first needed; calling it again does nothing.
+     */
+    public static synchronized void preload() {
+        if (!BREEDS.isEmpty()) {
+            return;
+        }
+        for (Map.Entry<String, String> breed : BREED_FILES.entrySet()) {
+            String file = breed.getValue();
+            BREEDS.put(breed.getKey(), CompletableFuture.supplyAsync(() -> load(file), LOADERS));
+        }
+    }
+
+    public static String[] getBreeds() {
+        return BREED_FILES.keySet().toArray(new String[0]);
+    }
+
+    /**
+     * Returns the icon of a breed for the breed menus, or a blank placeholder
+     * if it has not loaded yet.
+     *
+     * @param breed the breed
+     * @return the icon, ICON_SIZE pixels square
+     */
+    public static ImageIcon getBreedIcon(String breed) {
+        BreedIcons icons = get(breed).getNow(null);
+        return icons != null ? icons.icon : PLACEHOLDER;
+    }
+
+    /**
+     * Returns the icon of a breed drawn on a white circle, as shown next to
+     * each lane, or an empty circle if it has not loaded yet.
+     *
+     * @param breed the breed
+     * @return the badge, ICON_SIZE pixels square
+     */
+    public static ImageIcon getBadge(String breed) {
+        BreedIcons icons = get(breed).getNow(null);
+        return icons != null ? icons.badge : PLACEHOLDER_BADGE;
+    }
+
+    /**
+     * Returns the badge for an icon: the ready-made one if the icon came
+     * from getBreedIcon, otherwise one made the first time it is asked for.
+     *
+     * @param icon the icon
+     * @return the icon drawn on a white circle
+     */
+    public static ImageIcon getBadge(ImageIcon icon) {
+        if (icon == PLACEHOLDER) {
+            return PLACEHOLDER_BADGE;
+        }
+        for (String breed : BREED_FILES.keySet()) {
+            BreedIcons icons = get(breed).getNow(null);
+            if (icons != null && icons.icon == icon) {
+                return icons.badge;
+            }
+        }
+        return OTHER_BADGES.computeIfAbsent(icon, AssetCache::makeBadge);
+    }
+
+    /**
+     * Hands the icon of a breed to an action on the Swing thread once it has
+     * loaded, so a screen given the placeholder can put the picture in its
+     * place. If the icon has loaded already the action is still run later,
+     * not straight away.
+     *
+     * @param breed  the breed
+     * @param action what to do with the icon, ICON_SIZE pixels square
+     */
+    public static void whenLoaded(String breed, Consumer<ImageIcon> action) {
+        get(breed).thenAccept(icons -> SwingUtilities.invokeLater(() -> action.accept(icons.icon)));
+    }
+
+    private static synchronized CompletableFuture<BreedIcons> get(String breed) {
+        preload();
+        CompletableFuture<BreedIcons> icons = BREEDS.get(breed);
+        if (icons == null) {
+            throw new IllegalArgumentException("no breed called " + breed);
+        }
+        return icons;
+    }
+
+    // reads, scales and composes one picture, on a loader thread
+    private static BreedIcons load(String file) {
+        BufferedImage image = null;
+        try {
+            URL resource = AssetCache.class.getResource("/" + file);
+            if (resource != null) {
+                image = ImageIO.read(resource);
+            } else {
+                image = ImageIO.read(new File(System.getProperty("user.dir"), file));
+            }
+        } catch (IOException e) {
+            System.err.println("Could not load " + file + ": " + e.getMessage());
+        }
+
+        // a picture that could not be read is left blank rather than stopping the game
+        BufferedImage scaled = new BufferedImage(ICON_SIZE, ICON_SIZE, BufferedImage.TYPE_INT_ARGB);
+        if (image != null) {
+            Graphics2D g = scaled.createGraphics();
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.drawImage(shrink(image), 0, 0, ICON_SIZE, ICON_SIZE, null);
+            g.dispose();
+        }
+        ImageIcon icon = new ImageIcon(scaled);
+        return new BreedIcons(icon, makeBadge(icon));
+    }
+
+    /**
+     * Halves a large image until it is less than twice the icon size, so the
+     * last bicubic step gives as smooth a result as Image.SCALE_SMOOTH did.
+     */
+    private static BufferedImage shrink(BufferedImage image) {
+        while (image.getWidth() >= ICON_SIZE * 4 && image.getHeight() >= ICON_SIZE * 4) {
+            BufferedImage half = new BufferedImage(image.getWidth() / 2, image.getHeight() / 2,
+                    BufferedImage.TYPE_INT_ARGB);
+            Graphics2D g = half.createGraphics();
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.drawImage(image, 0, 0, half.getWidth(), half.getHeight(), null);
+            g.dispose();
+            image = half;
+        }
+        return image;
+    }
+
+    // draws an icon on a white circle the size of the icon
+    private static ImageIcon makeBadge(ImageIcon icon) {
+        int width = icon.getIconWidth();
+        int height = icon.getIconHeight();
+        BufferedImage badge = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = badge.createGraphics();
+        g.setColor(Color.WHITE);
+        g.fillOval(0, 0, width, height);
+        g.drawImage(icon.getImage(), 0, 0, null);
+        g.dispose();
+        return new ImageIcon(badge);
+    }
+
+    // the finished icons of one breed
+    private static final class BreedIcons {
+        private final ImageIcon icon;
+        private final ImageIcon badge;
+
+        BreedIcons(ImageIcon icon, ImageIcon badge) {
+            this.icon = icon;
+            this.badge = badge;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/**
+ * The combined outcome of a batch of simulated races: how often each lane won
+ * and fell, and on which tick each lane's wins happened.
+ *
+ * @author Rahman Imtiaz
+ * @version 1.0
+ */
+
+public class BatchResult {
+    private final int laneCount;
+    private final int maxTick;
+    private long races;
+    private long allFallen;
+    private final long[] wins;
+    private final long[] falls;
+    private final long[] finishTickTotals;
+    private final long[][] finishTicks; // [lane][tick], the last bucket holds every later tick
+
+    /**
+     * Constructor for objects of class BatchResult
+     *
+     * @param laneCount the number of lanes in each race
+     * @param maxTick   the last tick with its own bucket in the finish tick
+     *                  distributions
+     */
+    public BatchResult(int laneCount, int maxTick) {
+        this.laneCount = laneCount;
+        this.maxTick = maxTick;
+        this.wins = new long[laneCount];
+        this.falls = new long[laneCount];
+        this.finishTickTotals = new long[laneCount];
+        this.finishTicks = new long[laneCount][maxTick + 1];
+    }
+
+    /**
+     * Adds the outcome of a finished race to the totals.
+     *
+     * @param engine an engine whose race has finished
+     */
+    public void record(RaceEngine engine) {
+        races++;
+        int winner = engine.getWinner();
+        if (winner == RaceEngine.NO_WINNER) {
+            allFallen++;
+        } else {
+            int tick = engine.getTicks();
+            wins[winner]++;
+            finishTickTotals[winner] += tick;
+            finishTicks[winner][Math.min(tick, maxTick)]++;
+        }
+        for (int lane = 0; lane < laneCount; lane++) {
+            if (engine.hasFallen(lane)) {
+                falls[lane]++;
+            }
+        }
+    }
+
+    /**
+     * Adds the totals of another batch (with the same lanes) to this one.
+     *
+     * @param other the batch to add
+     * @return this batch
+     */
+    public BatchResult merge(BatchResult other) {
+        races += other.races;
+        allFallen += other.allFallen;
+        for (int lane = 0; lane < laneCount; lane++) {
+            wins[lane] += other.wins[lane];
+            falls[lane] += other.falls[lane];
+            finishTickTotals[lane] += other.finishTickTotals[lane];
+            for (int tick = 0; tick <= maxTick; tick++) {
+                finishTicks[lane][tick] += other.finishTicks[lane][tick];
+            }
+        }
+        return this;
+    }
+
+    public int getLaneCount() {
+        return laneCount;
+    }
+
+    public int getMaxTick() {
+        return maxTick;
+    }
+
+    public long getRaces() {
+        return races;
+    }
+
+    public long getAllFallen() {
+        return allFallen;
+    }
+
+    public long getWins(int lane) {
+        return wins[lane];
+    }
+
+    public long getFalls(int lane) {
+        return falls[lane];
+    }
+
+    public double getWinProbability(int lane) {
+        return races == 0 ? 0 : (double) wins[lane] / races;
+    }
+
+    public double getFallProbability(int lane) {
+        return races == 0 ? 0 : (double) falls[lane] / races;
+    }
+
+    public double getAllFallenProbability() {
+        return races == 0 ? 0 : (double) allFallen / races;
+    }
+
+    public double getMeanFinishTick(int lane) {
+        return wins[lane] == 0 ? 0 : (double) finishTickTotals[lane] / wins[lane];
+    }
+
+    /**
+     * Returns how many of a lane's wins happened on each tick. The last entry
+     * counts every win on or after getMaxTick().
+     *
+     * @param lane the lane
+     * @return a copy of the lane's finish tick counts, indexed by tick
+     */
+    public long[] getFinishTicks(int lane) {
+        return finishTicks[lane].clone();
+    }
+}
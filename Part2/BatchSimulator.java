@@ -0,0 +1,237 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Runs a large number of independent races for the same field of horses,
+ * spread over every core with a ForkJoinPool, to estimate how likely each
+ * horse is to win or fall.
+ *
+ * Every task gets its own SplittableRandom, split from its parent's, so the
+ * workers never share a random number generator and the same seed always
+ * gives the same result however many cores are used. Every race can also be
+ * written to a ResultsExporter as it is run.
+ *
+ * @author Rahman Imtiaz
+ * @version 1.0
+ */
+
+public class BatchSimulator {
+    private static final int RACES_PER_TASK = 20_000;
+    private static final int MAX_TICK_PER_STEP = 20;
+
+    private final int finishDistance;
+    private final double[] confidences;
+    private final ForkJoinPool pool;
+
+    /**
+     * Constructor for objects of class BatchSimulator
+     *
+     * @param finishDistance the number of steps a horse needs to win
+     * @param confidences    the confidence of the horse in each lane
+     * @param pool           the pool the races are run on
+     * @throws IllegalArgumentException if the finish distance is less than 1
+     */
+    public BatchSimulator(int finishDistance, double[] confidences, ForkJoinPool pool) {
+        if (finishDistance < 1) {
+            throw new IllegalArgumentException("finish distance must be at least 1");
+        }
+        this.finishDistance = finishDistance;
+        this.confidences = confidences.clone();
+        this.pool = pool;
+    }
+
+    public BatchSimulator(int finishDistance, double[] confidences) {
+        this(finishDistance, confidences, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Runs a batch of races.
+     *
+     * @param races the number of races to run
+     * @param seed  the seed the random number generators are split from
+     * @return the combined outcome of every race
+     */
+    public BatchResult simulate(long races, long seed) {
+        return pool.invoke(new SimulationTask(races, new SplittableRandom(seed), null));
+    }
+
+    /**
+     * Runs a batch of races, writing every race to an exporter as well. The
+     * races are written in the order the threads finish them.
+     *
+     * @param races    the number of races to run
+     * @param seed     the seed the random number generators are split from
+     * @param exporter where to write each race
+     * @return the combined outcome of every race
+     * @throws IOException if the races cannot be written
+     */
+    public BatchResult simulate(long races, long seed, ResultsExporter exporter) throws IOException {
+        try {
+            return pool.invoke(new SimulationTask(races, new SplittableRandom(seed), exporter));
+        } catch (UncheckedIOException e) {
+            // the pool may wrap the exception again when it comes from another thread
+            Throwable cause = e;
+            while (!(cause instanceof IOException) && cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw e;
+        }
+    }
+
+    public BatchResult simulate(long races) {
+        return simulate(races, new SplittableRandom().nextLong());
+    }
+
+    /**
+     * Runs a batch of races from the command line and prints the chance of
+     * each horse winning and falling, for example
+     * <pre>
+     * java BatchSimulator 1000000 50 0.6,0.5,0.4
+     * </pre>
+     * for a million races of three horses on a track of length 50. A seed
+     * can be given after the confidences to run the same batch again, and
+     * after the seed a file to write every race to: CSV, or JSON Lines if
+     * the name ends in .jsonl, gzipped if it ends in .gz as well.
+     *
+     * @param args the number of races, the track length, the confidences
+     *             separated by commas, the seed and the output file
+     */
+    public static void main(String[] args) {
+        if (args.length < 3) {
+            System.out.println("Usage: java BatchSimulator races length confidence,confidence,... [seed [file]]");
+            return;
+        }
+        long races;
+        int raceLength;
+        double[] confidences;
+        long seed;
+        try {
+            races = Long.parseLong(args[0]);
+            raceLength = Integer.parseInt(args[1]);
+            String[] confidenceText = args[2].split(",");
+            confidences = new double[confidenceText.length];
+            for (int lane = 0; lane < confidences.length; lane++) {
+                confidences[lane] = Double.parseDouble(confidenceText[lane].trim());
+            }
+            seed = args.length > 3 ? Long.parseLong(args[3]) : System.nanoTime();
+        } catch (NumberFormatException e) {
+            System.out.println("Error: the races, length, confidences and seed must be numbers");
+            return;
+        }
+        Path output = args.length > 4 ? Paths.get(args[4]) : null;
+
+        // a horse must have at least one step to run before its right edge reaches the end
+        int finishDistance = RaceEngine.finishDistance(raceLength, RaceEngine.HORSE_WIDTH);
+        if (races < 1) {
+            System.out.println("Error: the number of races must be at least 1");
+            return;
+        }
+        if (finishDistance < 1) {
+            System.out.println("Error: the track length must be at least " + ((RaceEngine.HORSE_WIDTH / 10) + 1));
+            return;
+        }
+        for (double confidence : confidences) {
+            if (!(confidence >= 0 && confidence <= 1)) {
+                System.out.println("Error: every confidence must be between 0 and 1, not " + confidence);
+                return;
+            }
+        }
+
+        BatchSimulator simulator = new BatchSimulator(finishDistance, confidences);
+        long start = System.nanoTime();
+        BatchResult result;
+        if (output == null) {
+            result = simulator.simulate(races, seed);
+        } else {
+            String name = output.getFileName().toString();
+            boolean gzip = name.endsWith(".gz");
+            if (gzip) {
+                name = name.substring(0, name.length() - 3);
+            }
+            ResultsExporter.Format format = name.endsWith(".jsonl") ? ResultsExporter.Format.JSON_LINES
+                    : ResultsExporter.Format.CSV;
+            try (ResultsExporter exporter = new ResultsExporter(output, format, gzip, confidences.length)) {
+                result = simulator.simulate(races, seed, exporter);
+            } catch (IOException e) {
+                System.out.println("Error: could not write " + output + ": " + e.getMessage());
+                return;
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        printResult(result, confidences, seed, seconds);
+        if (output != null) {
+            System.out.println("Every race was written to " + output);
+        }
+    }
+
+    private static void printResult(BatchResult result, double[] confidences, long seed, double seconds) {
+        System.out.printf("%,d races (seed %d) in %.2f s, %,.0f races/s%n", result.getRaces(), seed, seconds,
+                result.getRaces() / seconds);
+        System.out.printf("%-4s %10s %8s %8s %14s%n", "Lane", "Confidence", "Win %", "Fall %", "Mean win tick");
+        for (int lane = 0; lane < confidences.length; lane++) {
+            System.out.printf("%-4d %10.1f %7.2f%% %7.2f%% %14.1f%n", lane + 1, confidences[lane],
+                    100 * result.getWinProbability(lane), 100 * result.getFallProbability(lane),
+                    result.getMeanFinishTick(lane));
+        }
+        System.out.printf("All horses fell: %.2f%%%n", 100 * result.getAllFallenProbability());
+    }
+
+    private BatchResult newResult() {
+        return new BatchResult(confidences.length, finishDistance * MAX_TICK_PER_STEP);
+    }
+
+    private class SimulationTask extends RecursiveTask<BatchResult> {
+        private static final long serialVersionUID = 1L;
+
+        private final long races;
+        private final SplittableRandom random;
+        private final ResultsExporter exporter; // or null
+
+        SimulationTask(long races, SplittableRandom random, ResultsExporter exporter) {
+            this.races = races;
+            this.random = random;
+            this.exporter = exporter;
+        }
+
+        @Override
+        protected BatchResult compute() {
+            if (races <= RACES_PER_TASK) {
+                RaceEngine engine = new RaceEngine(finishDistance, confidences, random);
+                BatchResult result = newResult();
+                ResultsExporter.Chunk chunk = exporter == null ? null : exporter.newChunk();
+                try {
+                    for (long i = 0; i < races; i++) {
+                        engine.reset();
+                        engine.run();
+                        result.record(engine);
+                        if (chunk != null) {
+                            chunk.add(engine);
+                        }
+                    }
+                    if (chunk != null) {
+                        chunk.close();
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return result;
+            }
+
+            // split the races in half, the forked half gets its own generator
+            long half = races / 2;
+            SimulationTask left = new SimulationTask(half, random.split(), exporter);
+            SimulationTask right = new SimulationTask(races - half, random, exporter);
+            left.fork();
+            BatchResult result = right.compute();
+            return result.merge(left.join());
+        }
+    }
+}
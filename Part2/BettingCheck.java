@@ -0,0 +1,296 @@
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Checks that BettingLedger and User keep every pound accounted for when
+ * bets are placed from many threads at once, and while the ledger is being
+ * settled:
+ * <ul>
+ * <li>every bet accepted is settled exactly once, and a bet that is not
+ * accepted costs nothing;</li>
+ * <li>every balance ends up as its start, less the stakes of its accepted
+ * bets, plus their payouts;</li>
+ * <li>a balance debited from many threads is never overdrawn;</li>
+ * <li>a ledger or tote settled from two threads at once, as the race's
+ * events and the GUI both do for the ledger, pays each bet once;</li>
+ * <li>a bet placed before the race screen is rebuilt, as adding a horse
+ * does, is still settled with the race;</li>
+ * <li>a payout that would not fit in a balance is refused, not capped, and
+ * the other winners are still paid, by the ledger and by TotePool.</li>
+ * </ul>
+ * Anything wrong is printed and the program exits with status 1, so it can
+ * be run as part of a build:
+ *
+ * <pre>
+ * java BettingCheck [rounds] [threads]
+ * </pre>
+ *
+ * @author Rahman Imtiaz
+ * @version 1.0
+ */
+
+public class BettingCheck {
+    private static final int USERS = 200;
+    private static final int START_BALANCE = 1_000_000;
+    private static final int BETS_PER_THREAD = 20_000;
+    private static final int LANES = 6;
+    private static final int TOTE_BETS = 10_000; // on each lane, enough for two settles to overlap
+
+    private int failures;
+
+    public static void main(String[] args) throws Exception {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        int threads = args.length > 1 ? Integer.parseInt(args[1])
+                : Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+
+        BettingCheck check = new BettingCheck();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            long bets = 0;
+            for (int round = 0; round < rounds; round++) {
+                bets += check.checkSettleWhileBetting(pool, threads, round);
+            }
+            System.out.printf("%d rounds of %d threads: %,d bets accepted and settled%n", rounds, threads, bets);
+            check.checkNoOverdraft(pool, threads);
+            check.checkSettleTwice(pool, rounds);
+        } finally {
+            pool.shutdownNow();
+        }
+        check.checkOverflow();
+        check.checkBetKeptForNextRace();
+
+        if (check.failures > 0) {
+            System.out.println(check.failures + " checks failed");
+            System.exit(1);
+        }
+        System.out.println("All checks passed");
+    }
+
+    // many threads bet while the main thread settles the ledger part way through
+    private long checkSettleWhileBetting(ExecutorService pool, int threads, int round) throws Exception {
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < USERS; i++) {
+            users.add(new User(START_BALANCE));
+        }
+        BettingLedger ledger = new BettingLedger();
+        CountDownLatch start = new CountDownLatch(1);
+
+        List<Future<List<BettingLedger.Bet>>> placed = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            placed.add(pool.submit(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                List<BettingLedger.Bet> accepted = new ArrayList<>();
+                start.await();
+                for (int i = 0; i < BETS_PER_THREAD; i++) {
+                    User user = users.get(random.nextInt(USERS));
+                    BettingLedger.Bet bet = ledger.placeBet(user, random.nextInt(LANES), 1 + random.nextInt(5),
+                            random.nextInt(8) / 2.0);
+                    if (bet != null) {
+                        accepted.add(bet);
+                    }
+                }
+                return accepted;
+            }));
+        }
+
+        start.countDown();
+        // settle at a different moment each round, sometimes while bets are still coming in
+        Thread.sleep(new SplittableRandom(round).nextInt(5));
+        int winner = round % (LANES + 1) == LANES ? RaceEngine.NO_WINNER : round % LANES;
+        List<BettingLedger.Bet> settled = ledger.settle(winner);
+
+        Map<BettingLedger.Bet, Boolean> settledOnce = new IdentityHashMap<>();
+        for (BettingLedger.Bet bet : settled) {
+            if (settledOnce.put(bet, Boolean.TRUE) != null) {
+                fail("round " + round + ": a bet was settled twice");
+            }
+        }
+
+        Map<User, Long> expected = new IdentityHashMap<>();
+        long acceptedCount = 0;
+        for (Future<List<BettingLedger.Bet>> future : placed) {
+            for (BettingLedger.Bet bet : future.get()) {
+                acceptedCount++;
+                if (!bet.isSettled() || !settledOnce.containsKey(bet)) {
+                    fail("round " + round + ": an accepted bet was not settled");
+                }
+                expected.merge(bet.getUser(), bet.getPayout() - bet.getStake(), Long::sum);
+            }
+        }
+        if (acceptedCount != settled.size()) {
+            fail("round " + round + ": " + acceptedCount + " bets accepted but " + settled.size() + " settled");
+        }
+        for (User user : users) {
+            long balance = START_BALANCE + expected.getOrDefault(user, 0L);
+            if (user.getBalance() != balance) {
+                fail("round " + round + ": a balance is " + user.getBalance() + ", expected " + balance);
+            }
+        }
+        if (ledger.getStaked() != 0) {
+            fail("round " + round + ": " + ledger.getStaked() + " still staked after settling");
+        }
+        return acceptedCount;
+    }
+
+    // many threads take one pound at a time from the same balance
+    private void checkNoOverdraft(ExecutorService pool, int threads) throws Exception {
+        int startBalance = 100_000;
+        User user = new User(startBalance);
+        AtomicInteger debits = new AtomicInteger();
+        List<Future<?>> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            workers.add(pool.submit(() -> {
+                while (user.tryDebit(1)) {
+                    debits.incrementAndGet();
+                }
+            }));
+        }
+        for (Future<?> worker : workers) {
+            worker.get();
+        }
+        if (user.getBalance() != 0 || debits.get() != startBalance) {
+            fail("overdraft: balance " + user.getBalance() + " after " + debits.get() + " debits");
+        }
+        System.out.printf("%d threads took %,d single pounds from one balance without overdrawing it%n", threads,
+                debits.get());
+    }
+
+    // two threads settle the same ledger at the same moment
+    private void checkSettleTwice(ExecutorService pool, int rounds) throws Exception {
+        for (int round = 0; round < rounds; round++) {
+            User user = new User(1000);
+            BettingLedger ledger = new BettingLedger();
+            for (int i = 0; i < 100; i++) {
+                ledger.placeBet(user, 0, 1, 1);
+            }
+            CountDownLatch start = new CountDownLatch(1);
+            Future<List<BettingLedger.Bet>> first = pool.submit(() -> {
+                start.await();
+                return ledger.settle(0);
+            });
+            Future<List<BettingLedger.Bet>> second = pool.submit(() -> {
+                start.await();
+                return ledger.settle(0);
+            });
+            start.countDown();
+            int settled = first.get().size() + second.get().size();
+            if (settled != 100 || user.getBalance() != 1100 || ledger.getSettlement().get().size() != 100) {
+                fail("settle twice: " + settled + " bets settled, balance " + user.getBalance());
+            }
+
+            // the tote works its payouts out from the whole pool, so a settle that
+            // only saw part of it would pay the wrong amounts
+            User winner = new User(START_BALANCE);
+            User loser = new User(START_BALANCE);
+            TotePool tote = new TotePool(2, 0);
+            for (int i = 0; i < TOTE_BETS; i++) {
+                tote.placeBet(winner, TotePool.Pool.WIN, 0, 1);
+                tote.placeBet(loser, TotePool.Pool.WIN, 1, 1);
+            }
+            CountDownLatch toteStart = new CountDownLatch(1);
+            Future<List<TotePool.Ticket>> firstTote = pool.submit(() -> {
+                toteStart.await();
+                return tote.settle(new int[] { 0, 1 });
+            });
+            Future<List<TotePool.Ticket>> secondTote = pool.submit(() -> {
+                toteStart.await();
+                return tote.settle(new int[] { 0, 1 });
+            });
+            toteStart.countDown();
+            settled = firstTote.get().size() + secondTote.get().size();
+            if (settled != 2 * TOTE_BETS || winner.getBalance() != START_BALANCE + TOTE_BETS
+                    || loser.getBalance() != START_BALANCE - TOTE_BETS) {
+                fail("tote settle twice: " + settled + " bets settled, balances " + winner.getBalance() + " and "
+                        + loser.getBalance());
+            }
+        }
+        System.out.printf("%d ledgers and totes settled from two threads at once paid each bet once%n", rounds);
+    }
+
+    // a bet placed, then the race screen rebuilt before the race is run
+    private void checkBetKeptForNextRace() {
+        User user = new User(100);
+        BettingLedger ledger = BettingLedger.forNextRace(null);
+        ledger.placeBet(user, 1, 10, 2);
+
+        BettingLedger rebuilt = BettingLedger.forNextRace(ledger);
+        if (rebuilt != ledger) {
+            fail("rebuild: the open ledger was replaced, losing the bet on it");
+        }
+        rebuilt.settle(1);
+        if (user.getBalance() != 120) {
+            fail("rebuild: the bet was not paid, balance " + user.getBalance());
+        }
+        if (BettingLedger.forNextRace(rebuilt) == rebuilt) {
+            fail("rebuild: a settled ledger was used for the next race");
+        }
+        System.out.println("A bet placed before the race screen is rebuilt is settled with the race");
+    }
+
+    // a winner whose balance cannot hold the payout
+    private void checkOverflow() {
+        User rich = new User(Integer.MAX_VALUE - 5);
+        User other = new User(100);
+        BettingLedger ledger = new BettingLedger();
+        ledger.placeBet(rich, 0, 10, 1);
+        ledger.placeBet(other, 0, 10, 1);
+        try {
+            ledger.settle(0);
+            fail("overflow: settle paid a payout that does not fit in a balance");
+        } catch (ArithmeticException e) {
+            // expected
+        }
+        if (rich.getBalance() != Integer.MAX_VALUE - 15) {
+            fail("overflow: the balance that could not be paid changed to " + rich.getBalance());
+        }
+        if (other.getBalance() != 110) {
+            fail("overflow: the other winner was not paid, balance " + other.getBalance());
+        }
+        if (!ledger.getSettlement().isCompletedExceptionally()) {
+            fail("overflow: the settlement did not report the failed payout");
+        }
+
+        User richPunter = new User(Integer.MAX_VALUE - 5);
+        User otherPunter = new User(100);
+        TotePool tote = new TotePool(2, 0);
+        tote.placeBet(richPunter, TotePool.Pool.WIN, 0, 10);
+        tote.placeBet(otherPunter, TotePool.Pool.WIN, 0, 10);
+        tote.placeBet(otherPunter, TotePool.Pool.WIN, 1, 20);
+        try {
+            tote.settle(new int[] { 0, 1 });
+            fail("overflow: the tote paid a payout that does not fit in a balance");
+        } catch (ArithmeticException e) {
+            // expected
+        }
+        if (richPunter.getBalance() != Integer.MAX_VALUE - 15 || otherPunter.getBalance() != 70 + 20) {
+            fail("overflow: the tote left balances of " + richPunter.getBalance() + " and "
+                    + otherPunter.getBalance());
+        }
+
+        User full = new User(Integer.MAX_VALUE);
+        try {
+            full.updateBalance(1);
+            fail("overflow: updateBalance went past the largest balance");
+        } catch (ArithmeticException e) {
+            // expected
+        }
+        if (full.getBalance() != Integer.MAX_VALUE) {
+            fail("overflow: a refused update changed the balance to " + full.getBalance());
+        }
+        System.out.println("Payouts too big for a balance are refused without changing it");
+    }
+
+    private void fail(String message) {
+        failures++;
+        System.out.println("FAILED: " + message);
+    }
+}
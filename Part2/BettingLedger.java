@@ -0,0 +1,242 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The bets placed on one race, by any number of users from any number of
+ * threads at once.
+ *
+ * Placing a bet takes the stake from the user's balance straight away (with
+ * a compare-and-set, so a balance can never be spent twice) and fixes the
+ * odds the bet is paid at. Nothing is locked: the bets go in a lock-free
+ * queue. Once the race is over, settle closes the ledger and pays out every
+ * bet in one pass, crediting each winning user once with the total of their
+ * winnings.
+ *
+ * A bet placed at the same moment the ledger is settled is either settled
+ * with the rest or handed back to its user with the stake refunded, never
+ * lost. Whichever thread takes the bet off the queue first decides which.
+ *
+ * The ledger can settle itself from a race's events: subscribe the
+ * subscriber from settleOnResult to the RaceSimulation, and getSettlement
+ * tells anyone waiting for the payouts when they have been made, or that
+ * they failed. The simulation may drop events for a slow subscriber, so
+ * whoever sees the race end should call settle as well; only the first call
+ * settles anything.
+ *
+ * @author Rahman Imtiaz
+ * @version 1.0
+ */
+
+public class BettingLedger {
+    private final ConcurrentLinkedQueue<Bet> bets = new ConcurrentLinkedQueue<>();
+    private final AtomicLong staked = new AtomicLong(); // total of the stakes of every open bet
+    private volatile boolean closed;
+    private volatile int winner = RaceEngine.NO_WINNER;
+    private final CompletableFuture<List<Bet>> settlement = new CompletableFuture<>();
+
+    /**
+     * Returns the ledger to take the bets on the next race: the one given if
+     * it has not been settled yet, so the bets already on it carry over to
+     * the race, otherwise a new one.
+     *
+     * @param ledger the ledger of the last race, or null if there was none
+     * @return the ledger
+     */
+    public static BettingLedger forNextRace(BettingLedger ledger) {
+        return ledger != null && !ledger.isClosed() ? ledger : new BettingLedger();
+    }
+
+    /**
+     * Places a bet, taking the stake from the user's balance.
+     *
+     * @param user  the user placing the bet
+     * @param lane  the lane of the horse the bet is on
+     * @param stake the amount bet, at least 1
+     * @param odds  the odds the bet will be paid at if the horse wins, as in
+     *              "odds to 1", so a winning bet gets back its stake plus the
+     *              stake times the odds
+     * @return the bet, or null if the user's balance is less than the stake or
+     *         the race has already been settled
+     */
+    public Bet placeBet(User user, int lane, int stake, double odds) {
+        if (stake < 1) {
+            throw new IllegalArgumentException("stake must be at least 1");
+        }
+        if (!(odds >= 0) || Double.isInfinite(odds)) {
+            throw new IllegalArgumentException("odds must be a number from 0 up");
+        }
+        if (closed || !user.tryDebit(stake)) {
+            return null;
+        }
+
+        Bet bet = new Bet(user, lane, stake, odds);
+        staked.addAndGet(stake);
+        bets.add(bet);
+
+        // the ledger may have been settled while the bet was being added; if the
+        // bet is still on the queue settle missed it, so take it back
+        if (closed && bets.remove(bet)) {
+            staked.addAndGet(-stake);
+            user.updateBalance(stake);
+            return null;
+        }
+        return bet;
+    }
+
+    /**
+     * Settles every bet once the race is over, in one pass. A bet on the
+     * winning lane gets back its stake plus its winnings; every other bet
+     * (and every bet, if all the horses fell) has already lost its stake.
+     * No more bets can be placed afterwards, and settling the ledger again
+     * does nothing.
+     *
+     * A payout too big for a user's balance is not capped: every other user
+     * is still paid, the bets keep the payout they were owed and an
+     * ArithmeticException is thrown at the end.
+     *
+     * @param winningLane the winning lane, or RaceEngine.NO_WINNER
+     * @return the bets that were settled, or an empty list if the ledger had
+     *         already been settled
+     * @throws ArithmeticException if a user's winnings would not fit in their
+     *                             balance
+     */
+    public synchronized List<Bet> settle(int winningLane) {
+        if (closed) {
+            return Collections.emptyList();
+        }
+        winner = winningLane;
+        closed = true;
+
+        try {
+            // add up each user's winnings, then credit them once each
+            List<Bet> settled = new ArrayList<>();
+            Map<User, Long> payouts = new IdentityHashMap<>();
+            Bet bet;
+            while ((bet = bets.poll()) != null) {
+                staked.addAndGet(-bet.stake);
+                if (bet.lane == winningLane) {
+                    bet.payout = bet.stake + (long) Math.floor(bet.stake * bet.odds);
+                    payouts.merge(bet.user, bet.payout, Long::sum);
+                }
+                bet.settled = true;
+                settled.add(bet);
+            }
+            int notPaid = 0;
+            for (Map.Entry<User, Long> payout : payouts.entrySet()) {
+                try {
+                    payout.getKey().credit(payout.getValue());
+                } catch (ArithmeticException e) {
+                    notPaid++; // the rest are still paid
+                }
+            }
+            if (notPaid > 0) {
+                throw new ArithmeticException(notPaid + " winning users could not be paid, their balance would go past "
+                        + Integer.MAX_VALUE);
+            }
+            settlement.complete(settled);
+            return settled;
+        } catch (RuntimeException e) {
+            // anyone waiting on the settlement hears about it, not just the caller
+            settlement.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Returns a subscriber for a race's events that settles the ledger as
+     * soon as the race has a result, on the thread that delivers the event.
+     *
+     * @return the subscriber
+     */
+    public Flow.Subscriber<List<RaceEvent>> settleOnResult() {
+        return RaceEvent.subscriber(event -> {
+            if (event.isRaceOver()) {
+                settle(event.getLane());
+            }
+        });
+    }
+
+    /**
+     * Returns a future that completes, with the bets settled, the first time
+     * the ledger is settled, or completes exceptionally if settling it
+     * failed.
+     *
+     * @return the future
+     */
+    public CompletableFuture<List<Bet>> getSettlement() {
+        return settlement;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Returns the total of the stakes of the bets still waiting to be
+     * settled.
+     *
+     * @return the total
+     */
+    public long getStaked() {
+        return staked.get();
+    }
+
+    public int getWinner() {
+        return winner;
+    }
+
+    /**
+     * One bet: who placed it, on which lane, how much and at what odds.
+     */
+    public static final class Bet {
+        private final User user;
+        private final int lane;
+        private final int stake;
+        private final double odds;
+        private volatile boolean settled;
+        private volatile long payout;
+
+        Bet(User user, int lane, int stake, double odds) {
+            this.user = user;
+            this.lane = lane;
+            this.stake = stake;
+            this.odds = odds;
+        }
+
+        public User getUser() {
+            return user;
+        }
+
+        public int getLane() {
+            return lane;
+        }
+
+        public int getStake() {
+            return stake;
+        }
+
+        public double getOdds() {
+            return odds;
+        }
+
+        public boolean isSettled() {
+            return settled;
+        }
+
+        /**
+         * Returns what the bet paid back, stake included.
+         *
+         * @return the payout, or 0 if the bet lost or has not been settled
+         */
+        public long getPayout() {
+            return payout;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+import java.math.BigDecimal;
+
+/**
+ * Helpers for storing a horse's confidence as a whole number of tenths
+ * (0 to 10) instead of a double.
+ *
+ * Rounding gives exactly the same result as the old
+ * Double.valueOf(new DecimalFormat("#.0").format(confidence)), which rounds
+ * half-even on the exact value of the double, but without creating any
+ * objects. Most of the halfway points (0.05, 0.15, ... 0.95) cannot be
+ * stored exactly as a double, so a confidence is compared against the
+ * nearest double to each one, knowing which side of the real halfway point
+ * that double lies on. Only 0.25 and 0.75 are exact, and those round to the
+ * even tenth.
+ *
+ * @author Rahman Imtiaz
+ * @version 1.0
+ */
+
+public final class Confidence {
+    public static final int MAX_TENTHS = 10;
+
+    // the double value and fall chance for each number of tenths
+    private static final double[] VALUES = new double[MAX_TENTHS + 1];
+    private static final double[] FALL_CHANCES = new double[MAX_TENTHS + 1];
+
+    // the nearest double to each halfway point k + 0.5 tenths, and whether
+    // that double is above (1), below (-1) or exactly on (0) the real point
+    private static final double[] HALFWAY = new double[MAX_TENTHS];
+    private static final int[] HALFWAY_SIDE = new int[MAX_TENTHS];
+
+    static {
+        for (int tenths = 0; tenths <= MAX_TENTHS; tenths++) {
+            VALUES[tenths] = tenths / 10.0;
+            FALL_CHANCES[tenths] = 0.1 * VALUES[tenths] * VALUES[tenths];
+        }
+        for (int k = 0; k < MAX_TENTHS; k++) {
+            BigDecimal exact = BigDecimal.valueOf((2 * k) + 1, 0).divide(BigDecimal.valueOf(20));
+            HALFWAY[k] = exact.doubleValue();
+            HALFWAY_SIDE[k] = new BigDecimal(HALFWAY[k]).compareTo(exact);
+        }
+    }
+
+    private Confidence() {
+    }
+
+    /**
+     * Clamps a confidence to the range 0-1 and rounds it to the nearest tenth.
+     * NaN is treated as 0.
+     *
+     * @param confidence the confidence as a double
+     * @return the confidence in tenths, from 0 to 10
+     */
+    public static int toTenths(double confidence) {
+        if (confidence > 1.0) {
+            return MAX_TENTHS;
+        } else if (!(confidence > 0.0)) {
+            return 0;
+        }
+
+        // start from a guess and move it until it is right, at most one step
+        int tenths = (int) ((confidence * 10) + 0.5);
+        while (tenths > 0 && !isAboveHalfway(confidence, tenths - 1)) {
+            tenths--;
+        }
+        while (tenths < MAX_TENTHS && isAboveHalfway(confidence, tenths)) {
+            tenths++;
+        }
+        return tenths;
+    }
+
+    // true if the confidence rounds up past k tenths
+    private static boolean isAboveHalfway(double confidence, int k) {
+        if (confidence != HALFWAY[k]) {
+            return confidence > HALFWAY[k];
+        }
+        return HALFWAY_SIDE[k] > 0 || (HALFWAY_SIDE[k] == 0 && k % 2 == 1);
+    }
+
+    /**
+     * Returns the confidence for a number of tenths, this is the same double
+     * that Double.valueOf gives for the one decimal place string.
+     *
+     * @param tenths the confidence in tenths
+     * @return the confidence as a double
+     */
+    public static double toDouble(int tenths) {
+        return VALUES[tenths];
+    }
+
+    /**
+     * Returns the chance of a horse falling on a single move, which is
+     * 0.1 * confidence * confidence.
+     *
+     * @param tenths the confidence in tenths
+     * @return the chance of falling
+     */
+    public static double fallChance(int tenths) {
+        return FALL_CHANCES[tenths];
+    }
+
+    /**
+     * Adds to (or takes away from) a confidence and clamps it to 0-10 tenths.
+     *
+     * @param tenths the confidence in tenths
+     * @param change the number of tenths to add, negative to take away
+     * @return the new confidence in tenths
+     */
+    public static int adjust(int tenths, int change) {
+        return Math.max(0, Math.min(MAX_TENTHS, tenths + change));
+    }
+}
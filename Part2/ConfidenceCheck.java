@@ -0,0 +1,113 @@
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.util.Locale;
+import java.util.SplittableRandom;
+
+/**
+ * Checks that Confidence rounds every confidence to exactly the same double
+ * as the old Horse.setConfidence, which clamped it to 0-1 and then ran it
+ * through Double.valueOf(new DecimalFormat("#.0").format(confidence)).
+ *
+ * It tries the edges of the range, every tenth and the doubles on and
+ * around each halfway point, then a number of random confidences, and
+ * prints any that differ. The program exits with status 1 if any do, so it
+ * can be run as part of a build:
+ *
+ * <pre>
+ * java ConfidenceCheck [random confidences] [seed]
+ * </pre>
+ *
+ * The doubles are compared bit for bit, with two exceptions. NaN is left
+ * out, as the old code could not format it and threw a
+ * NumberFormatException, where Confidence treats it as 0. And -0.0 is
+ * allowed to come back as 0.0: the old code kept the sign, but the two are
+ * equal and every calculation gives the same result with either.
+ *
+ * @author Rahman Imtiaz
+ * @version 1.0
+ */
+
+public class ConfidenceCheck {
+    private static final int ULPS_AROUND_HALFWAY = 64; // doubles tried either side of each halfway point
+
+    // the old code used the default locale, a dot is used here so it parses anywhere
+    private final DecimalFormat format = new DecimalFormat("#.0", DecimalFormatSymbols.getInstance(Locale.ROOT));
+    private long checked;
+    private long mismatches;
+
+    public static void main(String[] args) {
+        long randomCount = args.length > 0 ? Long.parseLong(args[0]) : 10_000_000;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : System.nanoTime();
+
+        ConfidenceCheck check = new ConfidenceCheck();
+        check.checkEdges();
+        check.checkHalfwayPoints();
+        check.checkRandom(randomCount, new SplittableRandom(seed));
+
+        System.out.printf("%,d confidences checked (seed %d), %,d mismatches%n", check.checked, seed,
+                check.mismatches);
+        if (check.mismatches > 0) {
+            System.exit(1);
+        }
+    }
+
+    private void checkEdges() {
+        double[] edges = { 0.0, -0.0, 1.0, -1.0, 2.0, Double.MIN_VALUE, -Double.MIN_VALUE, Double.MIN_NORMAL,
+                Math.nextDown(1.0), Math.nextUp(1.0), Double.MAX_VALUE, -Double.MAX_VALUE,
+                Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY };
+        for (double confidence : edges) {
+            check(confidence);
+        }
+        for (int tenths = 0; tenths <= Confidence.MAX_TENTHS; tenths++) {
+            check(tenths / 10.0);
+            check(tenths * 0.1); // not always the same double as tenths / 10.0
+        }
+    }
+
+    // the doubles nearest to 0.05, 0.15, ... 0.95, and a few either side
+    private void checkHalfwayPoints() {
+        for (int k = 0; k < Confidence.MAX_TENTHS; k++) {
+            double halfway = ((2 * k) + 1) / 20.0;
+            double below = halfway;
+            double above = halfway;
+            check(halfway);
+            for (int i = 0; i < ULPS_AROUND_HALFWAY; i++) {
+                below = Math.nextDown(below);
+                above = Math.nextUp(above);
+                check(below);
+                check(above);
+            }
+        }
+    }
+
+    private void checkRandom(long count, SplittableRandom random) {
+        for (long i = 0; i < count; i++) {
+            // mostly inside 0-1, with some outside to check the clamping
+            check((random.nextDouble() * 1.2) - 0.1);
+        }
+    }
+
+    private void check(double confidence) {
+        checked++;
+        double expected = oldConfidence(confidence);
+        double actual = Confidence.toDouble(Confidence.toTenths(confidence));
+        // compared bit for bit, apart from the sign of zero (see above)
+        boolean same = Double.doubleToRawLongBits(expected) == Double.doubleToRawLongBits(actual)
+                || (expected == 0.0 && actual == 0.0);
+        if (!same) {
+            mismatches++;
+            System.out.println("Mismatch for " + confidence + ": DecimalFormat gives " + expected
+                    + ", Confidence gives " + actual);
+        }
+    }
+
+    // what Horse.setConfidence did before confidences were kept in tenths
+    private double oldConfidence(double confidence) {
+        if (confidence > 1.0) {
+            confidence = 1.0;
+        } else if (confidence < 0.0) {
+            confidence = 0.0;
+        }
+        return Double.valueOf(format.format(confidence));
+    }
+}
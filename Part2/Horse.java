@@ -1,9 +1,4 @@
 import java.awt.Color;
-import java.awt.Graphics2D;
-import java.awt.image.BufferedImage;
-import java.text.DecimalFormat;
-import java.util.ArrayList;
-import java.util.List;
 
 import javax.swing.ImageIcon;
 import javax.swing.JLabel;
@@ -17,20 +12,23 @@ import javax.swing.JLabel;
  */
 
 public class Horse {
+    private static final int RECENT_RACES = 5; // Races counted as recent form
+    private static final int RECENT_FINISHING_TIMES = 10; // Finishing times shown in the stats
+
     // Fields of class Horse
     private String name;
     private char symbol;
     private int distanceTravelled;
     private boolean fallen;
-    private double confidence;
+    private int confidenceTenths; // confidence in tenths, from 0 to 10
     private String breed;
     private ImageIcon breedIcon;
     private JLabel horseLabel;
-    private List<Double> speeds;
+    private PerformanceHistory speeds;
     private double avgSpeed;
     private int totalRaces;
     private int totalWins;
-    private List<Double> finishingTimes;
+    private PerformanceHistory finishingTimes;
     private String accessory;
     private Color color;
 
@@ -41,12 +39,12 @@ public class Horse {
         this.name = "UNDEFINED";
         this.breed = "UNDEFINED";
         this.horseLabel = null;
-        this.confidence = 0.0;
+        this.confidenceTenths = 0;
         this.avgSpeed = 0;
         this.totalRaces = 0;
         this.totalWins = 0;
-        this.speeds = new ArrayList<>();
-        this.finishingTimes = new ArrayList<>();
+        this.speeds = new PerformanceHistory(RECENT_RACES);
+        this.finishingTimes = new PerformanceHistory(RECENT_FINISHING_TIMES);
     }
 
     // Other methods of class Horse
@@ -55,7 +53,11 @@ public class Horse {
     }
 
     public double getConfidence() {
-        return this.confidence;
+        return Confidence.toDouble(this.confidenceTenths);
+    }
+
+    public int getConfidenceTenths() {
+        return this.confidenceTenths;
     }
 
     public int getDistanceTravelled() {
@@ -86,16 +88,26 @@ public class Horse {
         this.horseLabel.setLocation(this.horseLabel.getLocation().x + 10, this.horseLabel.getLocation().y);                                                 
     }
 
-    public void setConfidence(double newConfidence) {
-        DecimalFormat df = new DecimalFormat("#.0");
+    public void setDistanceTravelled(int newDistance) {
+        this.distanceTravelled = newDistance;
+    }
 
-        if (newConfidence > 1.0) {
-            newConfidence = 1.0;
-        } else if (newConfidence < 0.0) {
-            newConfidence = 0.0;
-        }
+    /**
+     * Draws the horse's label a given distance along the track, which can be
+     * part way between two moves while a race is being animated.
+     *
+     * @param distance the distance from the start of the track, in pixels
+     */
+    public void placeLabel(int distance) {
+        this.horseLabel.setLocation(50 + distance, this.horseLabel.getLocation().y);
+    }
 
-        this.confidence = Double.valueOf(df.format(newConfidence));
+    public void setConfidence(double newConfidence) {
+        this.confidenceTenths = Confidence.toTenths(newConfidence);
+    }
+
+    public void setConfidenceTenths(int newConfidenceTenths) {
+        this.confidenceTenths = Confidence.adjust(newConfidenceTenths, 0);
     }
 
     public void setSymbol(char newSymbol) {
@@ -119,27 +131,8 @@ public class Horse {
     }
 
     public void setBreedIcon(ImageIcon newIcon) {
-        int width = newIcon.getIconWidth();
-        int height = newIcon.getIconHeight();
-
-        // Create a new image that can support transparency
-        BufferedImage combinedImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
-
-        // Get the graphics object from the image
-        Graphics2D g = combinedImage.createGraphics();
-
-        // Set the color and draw the circle
-        g.setColor(Color.WHITE);
-        g.fillOval(0, 0, width, height);
-
-        // Draw the icon on top of the circle
-        g.drawImage(newIcon.getImage(), 0, 0, null);
-
-        // Dispose the graphics object
-        g.dispose();
-
-        // Create a new ImageIcon from the combined image
-        this.breedIcon = new ImageIcon(combinedImage);
+        // the icon drawn on a white circle, made once per icon and shared
+        this.breedIcon = AssetCache.getBadge(newIcon);
     }
 
     public ImageIcon getBreedIcon() {
@@ -148,11 +141,23 @@ public class Horse {
 
     public void setAccessory(String newAccessory) {
         this.accessory = newAccessory;
-        if (this.accessory.equals("Saddle")) {
-            setConfidence(this.confidence + 0.1);
-        } else if (this.accessory.equals("Horseshoes")) {
-            setConfidence(this.confidence + 0.2);
+        this.confidenceTenths = Confidence.adjust(this.confidenceTenths, accessoryBonus(newAccessory));
+    }
+
+    /**
+     * Works out how much confidence an accessory gives a horse. A saddle adds
+     * 0.1 and horseshoes add 0.2, anything else has no effect.
+     *
+     * @param accessory the accessory being added
+     * @return the confidence it adds, in tenths
+     */
+    public static int accessoryBonus(String accessory) {
+        if (accessory.equals("Saddle")) {
+            return 1;
+        } else if (accessory.equals("Horseshoes")) {
+            return 2;
         }
+        return 0;
     }
 
     public String getAccessory() {
@@ -161,10 +166,25 @@ public class Horse {
 
     public void horseFallenGUI() {
         if (this.fallen == true) {
+            showLabelFallen(true);
+        }
+    }
+
+    /**
+     * Shows the horse's label as fallen or standing, without changing the
+     * horse itself. Used to draw a replay of a race that has already been
+     * counted.
+     *
+     * @param shownFallen true to show the horse as fallen
+     */
+    public void showLabelFallen(boolean shownFallen) {
+        if (shownFallen) {
             this.horseLabel.setIcon(new HorseIcon(Color.RED, Color.RED, "\u274C"));
-            this.horseLabel.revalidate();
-            this.horseLabel.repaint();
+        } else {
+            this.horseLabel.setIcon(new HorseIcon(this.color, this.color, "\uD83D\uDC0E"));
         }
+        this.horseLabel.revalidate();
+        this.horseLabel.repaint();
     }
 
     public void setName(String newName) {
@@ -185,33 +205,51 @@ public class Horse {
     }
 
     public void finalisePerformanceMetrics() {
-        double sum = 0;
-        for (double speed : this.speeds) {
-            sum += speed;
-        }
-        if (this.speeds.size() == 0) {
-            this.avgSpeed = 0;
-        } else {
-            this.avgSpeed = sum / this.speeds.size();
-        }
+        // the history keeps a running mean, so there is nothing to add up
+        this.avgSpeed = this.speeds.getMean();
+    }
+
+    /**
+     * Replaces this horse's performance metrics with a copy of another's,
+     * for example the stats saved for a horse with the same name.
+     *
+     * @param other the horse to copy from
+     */
+    public void copyPerformanceMetrics(Horse other) {
+        this.speeds = new PerformanceHistory(other.speeds);
+        this.finishingTimes = new PerformanceHistory(other.finishingTimes);
+        this.totalRaces = other.totalRaces;
+        this.totalWins = other.totalWins;
+        finalisePerformanceMetrics();
+    }
+
+    public PerformanceHistory getSpeeds() {
+        return speeds;
+    }
 
+    public PerformanceHistory getFinishingTimes() {
+        return finishingTimes;
     }
 
     public JLabel[] returnPerformanceMetricsLabels() {
-        JLabel[] labels = new JLabel[8];
+        JLabel[] labels = new JLabel[10];
         labels[0] = new JLabel("Horse: " + this.name);
         labels[1] = new JLabel("Breed: " + this.breed);
         labels[2] = new JLabel("Avg Speed: " + String.format("%.2f", this.avgSpeed));
-        labels[3] = new JLabel("Total races: " + this.totalRaces);
-        labels[4] = new JLabel("Total wins: " + this.totalWins);
+        // how much the speed and finishing time vary from race to race
+        labels[3] = new JLabel("Speed std dev: " + String.format("%.2f", this.speeds.getStandardDeviation()));
+        labels[4] = new JLabel("Total races: " + this.totalRaces);
+        labels[5] = new JLabel("Total wins: " + this.totalWins);
         if (this.totalRaces == 0) {
-            labels[5] = new JLabel("Win ratio: 0%");
+            labels[6] = new JLabel("Win ratio: 0%");
         } else {
-            labels[5] = new JLabel(
+            labels[6] = new JLabel(
                     "Win ratio: " + String.format("%.2f", ((double) this.totalWins / this.totalRaces) * 100) + "%");
         }
-        labels[6] = new JLabel("Finishing times: " + this.finishingTimes);
-        labels[7] = new JLabel("Accessory: " + this.accessory);
+        labels[7] = new JLabel("Finishing times (last " + RECENT_FINISHING_TIMES + "): " + this.finishingTimes);
+        labels[8] = new JLabel("Finishing time std dev: "
+                + String.format("%.2f", this.finishingTimes.getStandardDeviation()) + " s");
+        labels[9] = new JLabel("Accessory: " + this.accessory);
 
         return labels;
     }
@@ -222,16 +260,15 @@ public class Horse {
         double winRatioFactor = this.totalRaces != 0 ? 1 - ((double) this.totalWins / this.totalRaces) : 1;
 
         double recentSpeedFactor = 0;
-        int recentRaces = 5;
         int count = 0;
-        for (int i = this.speeds.size() - 1; i >= 0 && count < recentRaces; i--, count++) {
-            if (!Double.isNaN(this.speeds.get(i))) {
-                recentSpeedFactor += this.speeds.get(i);
+        for (int age = 0; age < this.speeds.getRecentCount(); age++, count++) {
+            if (!Double.isNaN(this.speeds.getRecent(age))) {
+                recentSpeedFactor += this.speeds.getRecent(age);
             }
         }
         recentSpeedFactor = count > 0 ? 1 / (recentSpeedFactor / count) : 0;
 
-        double confidenceFactor = 1 - this.confidence;
+        double confidenceFactor = 1 - getConfidence();
 
         double trackLengthFactor = trackLength / 1000;
 
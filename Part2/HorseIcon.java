@@ -1,12 +1,28 @@
 import javax.swing.*;
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
 
 public class HorseIcon implements Icon {
+    private static final int MAX_SPRITES = 64; // Most recently used sprites kept in the cache
+    private static final Font EMOJI_FONT = new Font("Segoe UI Emoji", Font.PLAIN, 60);
+
+    // Sprites that have already been drawn, least recently used first
+    private static final Map<SpriteKey, Image> SPRITES = new LinkedHashMap<SpriteKey, Image>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<SpriteKey, Image> eldest) {
+            return size() > MAX_SPRITES;
+        }
+    };
+
     private final int size = 60; // Increase size for better detail
     private final Color color;
     private final Color overlapColor; // Color for the overlapping part
     private String unicode;
+    private Image sprite;
 
     public HorseIcon(Color color, Color overlapColor, String unicode) {
         this.color = color;
@@ -15,56 +31,123 @@ public class HorseIcon implements Icon {
     }
 
     @Override
-public void paintIcon(Component c, Graphics g, int x, int y) {
+    public void paintIcon(Component c, Graphics g, int x, int y) {
+        if (sprite == null) {
+            sprite = getSprite(new SpriteKey(unicode, color, overlapColor, size));
+        }
 
-    // Create a BufferedImage to draw the horse emoji
-    BufferedImage img = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
-    Graphics2D g2d = img.createGraphics();
+        // Draw the finished sprite onto the component's graphics
+        g.drawImage(sprite, x, y, null);
+    }
 
-    // Set font size and color for drawing the emoji
-    g2d.setFont(new Font("Segoe UI Emoji", Font.PLAIN, size));
-    g2d.setColor(color); // Set the desired color here
+    /**
+     * Returns the sprite for a key, drawing it the first time it is needed.
+     */
+    private static Image getSprite(SpriteKey key) {
+        synchronized (SPRITES) {
+            Image cached = SPRITES.get(key);
+            if (cached != null) {
+                return cached;
+            }
+        }
 
-    // Draw horse emoji onto the BufferedImage
-    g2d.drawString(unicode, 0, size);
+        Image sprite = toCompatibleImage(renderSprite(key));
+        synchronized (SPRITES) {
+            SPRITES.put(key, sprite);
+        }
+        return sprite;
+    }
 
-    // Flip the BufferedImage horizontally
-    BufferedImage mirroredImg = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
-    Graphics2D mirroredG2d = mirroredImg.createGraphics();
-    mirroredG2d.drawImage(img, 0, 0, size, size, size, 0, 0, size, null);
-    mirroredG2d.dispose();
+    /**
+     * Draws the emoji, mirrors it and recolours its green parts with the
+     * overlap colour.
+     */
+    private static BufferedImage renderSprite(SpriteKey key) {
+        int size = key.size;
+        Color overlapColor = key.overlapColor;
 
-    // Iterate over each pixel
-    for (int i = 0; i < mirroredImg.getHeight(); i++) {
-        for (int j = 0; j < mirroredImg.getWidth(); j++) {
-            // Get the pixel's color
-            Color color = new Color(mirroredImg.getRGB(j, i));
+        // Create a BufferedImage to draw the horse emoji
+        BufferedImage img = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2d = img.createGraphics();
 
-            // Check if the color is green (this checks if green is the dominant component)
-            if (color.getGreen() > color.getRed() && color.getGreen() > color.getBlue()) {
-                // Calculate the relative luminance
-                double luminance = 0.2126 * color.getRed() + 0.7152 * color.getGreen() + 0.0722 * color.getBlue();
+        // Set font size and color for drawing the emoji
+        g2d.setFont(size == 60 ? EMOJI_FONT : EMOJI_FONT.deriveFont((float) size));
+        g2d.setColor(key.color); // Set the desired color here
 
-                // Calculate the equivalent shade of the overlap color
-                double overlapLuminance = 0.2126 * overlapColor.getRed() + 0.7152 * overlapColor.getGreen()
-                        + 0.0722 * overlapColor.getBlue();
-                double ratio = luminance / overlapLuminance;
+        // Draw horse emoji onto the BufferedImage
+        g2d.drawString(key.unicode, 0, size);
+        g2d.dispose();
+
+        // Flip the BufferedImage horizontally
+        BufferedImage mirroredImg = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D mirroredG2d = mirroredImg.createGraphics();
+        mirroredG2d.drawImage(img, 0, 0, size, size, size, 0, 0, size, null);
+        mirroredG2d.dispose();
+
+        // Recolour the green parts straight in the image's pixel array
+        if (overlapColor != null) {
+            recolour(((DataBufferInt) mirroredImg.getRaster().getDataBuffer()).getData(), overlapColor);
+        }
+
+        return mirroredImg;
+    }
+
+    /**
+     * Replaces every pixel where green is the dominant component with the
+     * equivalent shade of the overlap colour (same luminance), as opaque
+     * pixels. Works directly on the packed ARGB pixels of an image.
+     *
+     * @param pixels       the ARGB pixels, changed in place
+     * @param overlapColor the colour to use instead of green
+     */
+    static void recolour(int[] pixels, Color overlapColor) {
+        int overlapRed = overlapColor.getRed();
+        int overlapGreen = overlapColor.getGreen();
+        int overlapBlue = overlapColor.getBlue();
 
-                int newRed = Math.min(255, (int) (overlapColor.getRed() * ratio));
-                int newGreen = Math.min(255, (int) (overlapColor.getGreen() * ratio));
-                int newBlue = Math.min(255, (int) (overlapColor.getBlue() * ratio));
+        // The overlap colour's luminance is the same for every pixel
+        double overlapLuminance = 0.2126 * overlapRed + 0.7152 * overlapGreen + 0.0722 * overlapBlue;
 
-                Color alteredColor = new Color(newRed, newGreen, newBlue);
+        for (int i = 0; i < pixels.length; i++) {
+            int pixel = pixels[i];
+            int red = (pixel >> 16) & 0xFF;
+            int green = (pixel >> 8) & 0xFF;
+            int blue = pixel & 0xFF;
 
-                // Set the pixel to the new color
-                mirroredImg.setRGB(j, i, alteredColor.getRGB());
+            // Check if the color is green (this checks if green is the dominant component)
+            if (green > red && green > blue) {
+                // Calculate the relative luminance and the equivalent shade of the overlap color
+                double luminance = 0.2126 * red + 0.7152 * green + 0.0722 * blue;
+                double ratio = luminance / overlapLuminance;
+
+                int newRed = Math.min(255, (int) (overlapRed * ratio));
+                int newGreen = Math.min(255, (int) (overlapGreen * ratio));
+                int newBlue = Math.min(255, (int) (overlapBlue * ratio));
+
+                pixels[i] = 0xFF000000 | (newRed << 16) | (newGreen << 8) | newBlue;
             }
         }
     }
 
-    // Draw the mirrored image onto the component's graphics
-    g.drawImage(mirroredImg, x, y, null);
-}
+    /**
+     * Copies a sprite into an image in the screen's own format, so drawing it
+     * every frame is a plain copy. Without a screen the sprite is used as is.
+     */
+    private static Image toCompatibleImage(BufferedImage sprite) {
+        if (GraphicsEnvironment.isHeadless()) {
+            return sprite;
+        }
+        GraphicsConfiguration config = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice()
+                .getDefaultConfiguration();
+        BufferedImage compatible = config.createCompatibleImage(sprite.getWidth(), sprite.getHeight(),
+                Transparency.TRANSLUCENT);
+        Graphics2D g2d = compatible.createGraphics();
+        g2d.setComposite(AlphaComposite.Src);
+        g2d.drawImage(sprite, 0, 0, null);
+        g2d.dispose();
+        return compatible;
+    }
+
     @Override
     public int getIconWidth() {
         return size;
@@ -74,4 +157,34 @@ public void paintIcon(Component c, Graphics g, int x, int y) {
     public int getIconHeight() {
         return size;
     }
+
+    // Everything that changes how a sprite looks
+    private static final class SpriteKey {
+        private final String unicode;
+        private final Color color;
+        private final Color overlapColor;
+        private final int size;
+
+        SpriteKey(String unicode, Color color, Color overlapColor, int size) {
+            this.unicode = unicode;
+            this.color = color;
+            this.overlapColor = overlapColor;
+            this.size = size;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof SpriteKey)) {
+                return false;
+            }
+            SpriteKey other = (SpriteKey) o;
+            return size == other.size && unicode.equals(other.unicode) && Objects.equals(color, other.color)
+                    && Objects.equals(overlapColor, other.overlapColor);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(unicode, color, overlapColor, size);
+        }
+    }
 }
@@ -0,0 +1,123 @@
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Remembers the odds of the fields of horses raced most recently, and works
+ * out the odds of a new field on a background thread so the Swing thread
+ * never waits for them.
+ *
+ * A field is identified by the finish distance and the confidence of the
+ * horse in each lane, in tenths. Those are the only things that change how a
+ * race goes: the lane count is the number of confidences, an accessory is
+ * already part of the confidence and the breed has no effect, so fields that
+ * only differ in breed share their odds.
+ *
+ * @author Rahman Imtiaz
+ * @version 1.0
+ */
+
+public final class OddsCache {
+    private static final int MAX_FIELDS = 32; // Most recently used fields kept in the cache
+
+    // works the odds out one field at a time, away from the Swing thread
+    private static final ExecutorService WORKER = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "odds");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Odds that have been asked for, least recently used first
+    private static final Map<FieldKey, CompletableFuture<OddsEngine>> FIELDS =
+            new LinkedHashMap<FieldKey, CompletableFuture<OddsEngine>>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<FieldKey, CompletableFuture<OddsEngine>> eldest) {
+            return size() > MAX_FIELDS;
+        }
+    };
+
+    private OddsCache() {
+    }
+
+    /**
+     * Returns the odds of a field, starting to work them out in the
+     * background the first time they are asked for. This never blocks.
+     *
+     * @param finishDistance the number of steps a horse needs to win
+     * @param confidences    the confidence of the horse in each lane (with its
+     *                       accessory already added)
+     * @return the odds, which may not be ready yet
+     */
+    public static CompletableFuture<OddsEngine> getOdds(int finishDistance, double[] confidences) {
+        double[] field = confidences.clone();
+        int[] tenths = new int[field.length];
+        for (int lane = 0; lane < tenths.length; lane++) {
+            tenths[lane] = Confidence.toTenths(field[lane]);
+        }
+        FieldKey key = new FieldKey(finishDistance, tenths);
+
+        CompletableFuture<OddsEngine> odds;
+        synchronized (FIELDS) {
+            odds = FIELDS.get(key);
+            if (odds != null) {
+                return odds;
+            }
+            odds = CompletableFuture.supplyAsync(() -> new OddsEngine(finishDistance, field), WORKER);
+            FIELDS.put(key, odds);
+        }
+
+        // odds that could not be worked out are not kept, so they are tried again
+        odds.whenComplete((result, error) -> {
+            if (error != null) {
+                synchronized (FIELDS) {
+                    FIELDS.remove(key);
+                }
+            }
+        });
+        return odds;
+    }
+
+    /**
+     * Returns the odds of a field of horses, see getOdds.
+     *
+     * @param horses         the horses, one per lane
+     * @param finishDistance the number of steps a horse needs to win
+     * @return the odds, which may not be ready yet
+     */
+    public static CompletableFuture<OddsEngine> getOdds(List<Horse> horses, int finishDistance) {
+        double[] confidences = new double[horses.size()];
+        for (int i = 0; i < confidences.length; i++) {
+            confidences[i] = horses.get(i).getConfidence();
+        }
+        return getOdds(finishDistance, confidences);
+    }
+
+    // Everything that changes the odds of a field
+    private static final class FieldKey {
+        private final int finishDistance;
+        private final int[] confidenceTenths;
+
+        FieldKey(int finishDistance, int[] confidenceTenths) {
+            this.finishDistance = finishDistance;
+            this.confidenceTenths = confidenceTenths;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof FieldKey)) {
+                return false;
+            }
+            FieldKey other = (FieldKey) o;
+            return finishDistance == other.finishDistance && Arrays.equals(confidenceTenths, other.confidenceTenths);
+        }
+
+        @Override
+        public int hashCode() {
+            return (31 * finishDistance) + Arrays.hashCode(confidenceTenths);
+        }
+    }
+}
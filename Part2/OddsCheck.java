@@ -0,0 +1,97 @@
+import java.util.SplittableRandom;
+
+/**
+ * Checks the exact odds from OddsEngine against races actually run by
+ * RaceEngine. For each of a few fields it runs a number of races, counts
+ * how often each lane wins and how often every horse falls, and compares
+ * those shares with OddsEngine.getWinChance and getAllFallenChance.
+ *
+ * A share passes if it is within five standard errors of the exact chance,
+ * that is 5 * sqrt(p * (1 - p) / races), so a correct OddsEngine fails a
+ * share only about once in 1.7 million. A chance of exactly 0 must never
+ * happen at all. Anything outside the tolerance is printed and the program
+ * exits with status 1, so it can be run as part of a build:
+ *
+ * <pre>
+ * java OddsCheck [races per field] [seed]
+ * </pre>
+ *
+ * @author Rahman Imtiaz
+ * @version 1.0
+ */
+
+public class OddsCheck {
+    private static final double STANDARD_ERRORS = 5;
+
+    // the fields tried: a track length, then the confidence of each lane
+    private static final double[][] FIELDS = {
+        { 10, 0.6, 0.5 },
+        { 10, 1.0, 1.0 }, // level every time, so lane order decides
+        { 50, 0.6, 0.5, 0.4 },
+        { 50, 0.1, 0.2 }, // slow, and seldom fall
+        { 25, 0.1, 0.2, 0.3, 0.4, 0.5, 0.6, 0.7, 0.8, 0.9, 1.0, 0.5, 0.5 },
+        { 100, 0.2, 0.3, 0.25 },
+        { 150, 0.1, 0.15, 0.1, 0.15 }, // the longest track
+    };
+
+    private long checked;
+    private long failures;
+
+    public static void main(String[] args) {
+        long races = args.length > 0 ? Long.parseLong(args[0]) : 200_000;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : System.nanoTime();
+
+        OddsCheck check = new OddsCheck();
+        SplittableRandom random = new SplittableRandom(seed);
+        for (double[] field : FIELDS) {
+            int raceLength = (int) field[0];
+            double[] confidences = new double[field.length - 1];
+            System.arraycopy(field, 1, confidences, 0, confidences.length);
+            check.checkField(raceLength, confidences, races, random.split());
+        }
+
+        System.out.printf("%,d chances checked against %,d races each (seed %d), %,d outside the tolerance%n",
+                check.checked, races, seed, check.failures);
+        if (check.failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    private void checkField(int raceLength, double[] confidences, long races, SplittableRandom random) {
+        int finishDistance = RaceEngine.finishDistance(raceLength, RaceEngine.HORSE_WIDTH);
+        OddsEngine odds = new OddsEngine(finishDistance, confidences);
+        RaceEngine engine = new RaceEngine(finishDistance, confidences, random);
+
+        long[] wins = new long[confidences.length];
+        long allFallen = 0;
+        for (long race = 0; race < races; race++) {
+            engine.reset();
+            int winner = engine.run();
+            if (winner == RaceEngine.NO_WINNER) {
+                allFallen++;
+            } else {
+                wins[winner]++;
+            }
+        }
+
+        System.out.printf("Track length %d, %d lanes:%n", raceLength, confidences.length);
+        System.out.printf("  %-10s %10s %10s %10s %10s%n", "Lane", "Confidence", "Exact", "Simulated", "Tolerance");
+        for (int lane = 0; lane < confidences.length; lane++) {
+            check(String.valueOf(lane + 1), confidences[lane], odds.getWinChance(lane), wins[lane], races);
+        }
+        check("All fell", Double.NaN, odds.getAllFallenChance(), allFallen, races);
+    }
+
+    private void check(String what, double confidence, double exact, long count, long races) {
+        checked++;
+        double simulated = (double) count / races;
+        double tolerance = STANDARD_ERRORS * Math.sqrt(exact * (1 - exact) / races);
+        boolean ok = exact == 0 ? count == 0 : Math.abs(simulated - exact) <= tolerance;
+        System.out.printf("  %-10s %10s %10.5f %10.5f %10.5f%s%n", what,
+                Double.isNaN(confidence) ? "" : String.valueOf(confidence), exact, simulated, tolerance,
+                ok ? "" : "  FAILED");
+        if (!ok) {
+            failures++;
+        }
+    }
+}
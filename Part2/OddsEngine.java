@@ -0,0 +1,234 @@
+import java.util.List;
+
+/**
+ * Works out the exact chance of each horse winning a race, without running
+ * any races, from the same rules RaceEngine uses.
+ *
+ * Until a horse reaches the finish or falls its confidence never changes,
+ * so on every tick it moves with the same chance p (its confidence) and
+ * falls with the same chance q = 0.1 * p * p. Only on the tick it reaches
+ * the finish does its confidence go up, which changes its chance of falling
+ * straight afterwards. For each horse a small dynamic programme over the
+ * distance it has run gives, for every tick t:
+ * <ul>
+ * <li>the chance it reaches the finish on tick t,</li>
+ * <li>the chance it has fallen by tick t without reaching the finish,</li>
+ * <li>the chance it reaches the finish on tick t and then falls.</li>
+ * </ul>
+ * Horses move independently, so the chance of lane i winning on tick t is
+ * the chance that i finishes on t, every lane before it has not finished by
+ * t and every lane after it had not finished by t - 1. RaceEngine gives the
+ * race to the first lane in order that finishes, except that when lane 0 has
+ * not finished and every horse is down (even a finisher that fell straight
+ * afterwards) the race ends with no winner, so that case is taken away.
+ *
+ * Ticks are added up until the chance of the race still going is below
+ * 1e-15, which for 12 horses on the longest track takes a few milliseconds.
+ *
+ * @author Rahman Imtiaz
+ * @version 1.0
+ */
+
+public class OddsEngine {
+    private static final double EPSILON = 1e-15;
+
+    private final int finishDistance;
+    private final int laneCount;
+    private final double[] winChances;
+    private double allFallenChance;
+    private double expectedTicks;
+
+    /**
+     * Constructor for objects of class OddsEngine, which works out the odds
+     * straight away.
+     *
+     * @param finishDistance the number of steps a horse needs to win, at
+     *                       least 1
+     * @param confidences    the confidence of the horse in each lane (with its
+     *                       accessory already added)
+     */
+    public OddsEngine(int finishDistance, double[] confidences) {
+        if (finishDistance < 1) {
+            throw new IllegalArgumentException("finishDistance must be at least 1");
+        }
+        this.finishDistance = finishDistance;
+        this.laneCount = confidences.length;
+        this.winChances = new double[laneCount];
+
+        Lane[] lanes = new Lane[laneCount];
+        for (int lane = 0; lane < laneCount; lane++) {
+            lanes[lane] = new Lane(Confidence.toTenths(confidences[lane]), finishDistance);
+        }
+        calculate(lanes);
+    }
+
+    /**
+     * Works out the odds for a field of horses, see RaceEngine.fromHorses.
+     *
+     * @param horses         the horses, one per lane
+     * @param finishDistance the number of steps a horse needs to win
+     * @return the odds
+     */
+    public static OddsEngine fromHorses(List<Horse> horses, int finishDistance) {
+        double[] confidences = new double[horses.size()];
+        for (int i = 0; i < confidences.length; i++) {
+            confidences[i] = horses.get(i).getConfidence();
+        }
+        return new OddsEngine(finishDistance, confidences);
+    }
+
+    private void calculate(Lane[] lanes) {
+        // products over the lanes before and after each lane, reused every tick
+        double[] notFinishedBefore = new double[laneCount + 1];
+        double[] notFinishedAfter = new double[laneCount + 1];
+        double[] fallenBefore = new double[laneCount + 1];
+        double[] downAfter = new double[laneCount + 1];
+        double[] notFinishedLastTick = new double[laneCount];
+        double allFallenLastTick = 0;
+        double running = 1; // the chance the race has not finished yet
+        double anyRunning = 1; // the chances of each horse still running, added up
+
+        // the race can only go on while a horse is still running, and that is
+        // added up directly, so rounding in running cannot keep the loop going
+        for (int tick = 1; running > EPSILON && anyRunning > EPSILON; tick++) {
+            anyRunning = 0;
+            for (int lane = 0; lane < laneCount; lane++) {
+                notFinishedLastTick[lane] = lanes[lane].notFinished;
+                lanes[lane].tick();
+                anyRunning += lanes[lane].running;
+            }
+
+            notFinishedBefore[0] = 1;
+            fallenBefore[0] = 1;
+            for (int lane = 0; lane < laneCount; lane++) {
+                notFinishedBefore[lane + 1] = notFinishedBefore[lane] * lanes[lane].notFinished;
+                fallenBefore[lane + 1] = fallenBefore[lane] * lanes[lane].fallen;
+            }
+            notFinishedAfter[laneCount] = 1;
+            downAfter[laneCount] = 1;
+            for (int lane = laneCount - 1; lane >= 0; lane--) {
+                notFinishedAfter[lane] = notFinishedAfter[lane + 1] * notFinishedLastTick[lane];
+                downAfter[lane] = downAfter[lane + 1] * (lanes[lane].fallen + lanes[lane].finishedAndFell);
+            }
+
+            for (int lane = 0; lane < laneCount; lane++) {
+                Lane l = lanes[lane];
+                double first = l.finished * notFinishedBefore[lane] * notFinishedAfter[lane + 1];
+                if (lane > 0) {
+                    // lane 0 has not finished and every horse is down, so nobody wins
+                    double everyoneDown = l.finishedAndFell * fallenBefore[lane] * downAfter[lane + 1];
+                    allFallenChance += everyoneDown;
+                    first -= everyoneDown;
+                }
+                winChances[lane] += first;
+            }
+
+            double allFallen = fallenBefore[laneCount];
+            allFallenChance += allFallen - allFallenLastTick;
+            allFallenLastTick = allFallen;
+
+            double stillRunning = Math.max(0, notFinishedBefore[laneCount] - allFallen);
+            expectedTicks += tick * (running - stillRunning);
+            running = stillRunning;
+        }
+    }
+
+    public int getFinishDistance() {
+        return finishDistance;
+    }
+
+    public int getLaneCount() {
+        return laneCount;
+    }
+
+    /**
+     * Returns the chance of a horse winning.
+     *
+     * @param lane the lane of the horse
+     * @return the chance, from 0 to 1
+     */
+    public double getWinChance(int lane) {
+        return winChances[lane];
+    }
+
+    /**
+     * Returns the odds against a horse winning, as in "3 to 1", or infinity
+     * if it cannot win.
+     *
+     * @param lane the lane of the horse
+     * @return the odds against the horse
+     */
+    public double getOdds(int lane) {
+        return (1 - winChances[lane]) / winChances[lane];
+    }
+
+    /**
+     * Returns the chance of every horse falling, so that nobody wins.
+     *
+     * @return the chance, from 0 to 1
+     */
+    public double getAllFallenChance() {
+        return allFallenChance;
+    }
+
+    /**
+     * Returns the average number of ticks a race takes.
+     *
+     * @return the average number of ticks
+     */
+    public double getExpectedTicks() {
+        return expectedTicks;
+    }
+
+    // one horse's chances, brought forward one tick at a time
+    private static final class Lane {
+        private final double move;
+        private final double fall;
+        private final double fallAfterFinishing;
+        private final boolean fallsStraightAway;
+        private final double[] distances; // chance of being at each distance and still running
+
+        private double finished; // reached the finish on the latest tick
+        private double finishedAndFell; // reached the finish on the latest tick and then fell
+        private double notFinished = 1; // not reached the finish by the latest tick
+        private double fallen; // fallen by the latest tick without reaching the finish
+        private double running = 1; // still running after the latest tick
+
+        Lane(int confidenceTenths, int finishDistance) {
+            this.move = Confidence.toDouble(confidenceTenths);
+            this.fall = Confidence.fallChance(confidenceTenths);
+            this.fallAfterFinishing = Confidence.fallChance(Confidence.adjust(confidenceTenths, 1));
+            this.fallsStraightAway = confidenceTenths == 0;
+            this.distances = new double[finishDistance];
+            this.distances[0] = 1;
+        }
+
+        void tick() {
+            if (fallsStraightAway) {
+                // a horse with no confidence falls on the first tick
+                finished = 0;
+                finishedAndFell = 0;
+                fallen = 1;
+                running = 0;
+                distances[0] = 0;
+                return;
+            }
+
+            int last = distances.length - 1;
+            finished = distances[last] * move;
+            finishedAndFell = finished * fallAfterFinishing;
+            notFinished -= finished;
+            fallen += (running - finished) * fall;
+
+            double stay = (1 - move) * (1 - fall);
+            double step = move * (1 - fall);
+            running = 0;
+            for (int d = last; d > 0; d--) {
+                distances[d] = (distances[d] * stay) + (distances[d - 1] * step);
+                running += distances[d];
+            }
+            distances[0] *= stay;
+            running += distances[0];
+        }
+    }
+}
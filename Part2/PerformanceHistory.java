@@ -0,0 +1,128 @@
+/**
+ * A history of one measurement of a horse (such as its speed in each race)
+ * that takes the same memory however many races are added. It keeps a
+ * running mean and variance of every value added (using Welford's method,
+ * so adding a value never goes back over the earlier ones) and the most
+ * recent values in a fixed-size ring buffer.
+ *
+ * @author Rahman Imtiaz
+ * @version 1.0
+ */
+
+public class PerformanceHistory {
+    private final double[] recent; // ring buffer of the latest values
+    private int next; // where the next value goes in recent
+    private long count;
+    private double mean;
+    private double squaredDifferences; // sum of squared differences from the mean
+
+    /**
+     * Constructor for objects of class PerformanceHistory
+     *
+     * @param window the number of recent values kept
+     */
+    public PerformanceHistory(int window) {
+        if (window < 1) {
+            throw new IllegalArgumentException("window must be at least 1");
+        }
+        this.recent = new double[window];
+    }
+
+    /**
+     * Constructor for objects of class PerformanceHistory, copying another
+     * history
+     *
+     * @param other the history to copy
+     */
+    public PerformanceHistory(PerformanceHistory other) {
+        this.recent = other.recent.clone();
+        this.next = other.next;
+        this.count = other.count;
+        this.mean = other.mean;
+        this.squaredDifferences = other.squaredDifferences;
+    }
+
+    /**
+     * Adds the value from the latest race.
+     *
+     * @param value the value
+     */
+    public void add(double value) {
+        recent[next] = value;
+        next = (next + 1) % recent.length;
+
+        count++;
+        double difference = value - mean;
+        mean += difference / count;
+        squaredDifferences += difference * (value - mean);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the mean of every value added.
+     *
+     * @return the mean, or 0 if nothing has been added
+     */
+    public double getMean() {
+        return mean;
+    }
+
+    /**
+     * Returns the sample variance of every value added.
+     *
+     * @return the variance, or 0 if fewer than two values have been added
+     */
+    public double getVariance() {
+        return count > 1 ? squaredDifferences / (count - 1) : 0;
+    }
+
+    public double getStandardDeviation() {
+        return Math.sqrt(getVariance());
+    }
+
+    public int getWindow() {
+        return recent.length;
+    }
+
+    /**
+     * Returns how many recent values are kept, which is the number added up
+     * to the size of the window.
+     *
+     * @return the number of recent values
+     */
+    public int getRecentCount() {
+        return (int) Math.min(count, recent.length);
+    }
+
+    /**
+     * Returns one of the recent values.
+     *
+     * @param age 0 for the latest value, 1 for the one before and so on, up to
+     *            getRecentCount() - 1
+     * @return the value
+     */
+    public double getRecent(int age) {
+        if (age < 0 || age >= getRecentCount()) {
+            throw new IndexOutOfBoundsException("age " + age + " of " + getRecentCount());
+        }
+        return recent[Math.floorMod(next - 1 - age, recent.length)];
+    }
+
+    /**
+     * Lists the recent values, oldest first, in the same form as a List.
+     */
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder("[");
+        for (int age = getRecentCount() - 1; age >= 0; age--) {
+            text.append(getRecent(age));
+            if (age > 0) {
+                text.append(", ");
+            }
+        }
+        return text.append(']').toString();
+    }
+}
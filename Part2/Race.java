@@ -7,6 +7,10 @@ import javax.swing.*;
 import java.awt.*;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.SplittableRandom;
+import java.util.function.Consumer;
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 
@@ -19,6 +23,8 @@ import java.awt.event.ActionListener;
  */
 
 public class Race {
+    private static final String STORE_FILE = "race-history.dat";
+
     private int raceLength;
     private Color trackColour;
     private int horseNum;
@@ -30,7 +36,13 @@ public class Race {
     private Timer timer;
     private JFrame statsFrame;
     private RaceFrame raceFrame;
+    private RaceEngine engine;
+    private RaceSimulation simulation;
+    private double speed = 1;
+    private RaceRecording recording;
+    private RaceStore store;
     private User user;
+    private BettingLedger ledger; // the bets on the current race, kept until it is settled
     private int currentHorseCount = 1;
     private ArrayList<JTextField> nameTextFields;
     private ArrayList<JTextField> confidenceTextFields;
@@ -50,76 +62,65 @@ public class Race {
         // initialise instance variables
         raceLength = distance;
         horses = new ArrayList<Horse>();
-        user = new User(1000);
-    }
 
-    private boolean allHorsesHaveFallen() {
-        for (Horse horse : horses) {
-            if (horse != null && !horse.hasFallen()) {
-                return false;
-            }
+        // Load the balance and horse stats saved by earlier games
+        try {
+            store = RaceStore.open(Paths.get(STORE_FILE));
+        } catch (IOException e) {
+            System.err.println("Race history could not be loaded, it will not be saved: " + e.getMessage());
         }
-        return true;
+        user = new User(store != null ? store.getBalance(1000) : 1000);
     }
 
-    private void changeHorseConfidence(Horse horse) {
-
-        if (horse != null) {
-            if (raceWonBy(horse)) {
-                horse.setConfidence(horse.getConfidence() + 0.1);
-            } else if (horse.hasFallen()) {
-                horse.setConfidence(horse.getConfidence() - 0.1);
-            }
+    /**
+     * Gives a horse the stats saved for earlier horses with the same name
+     */
+    private void restoreStats(Horse horse) {
+        if (store != null) {
+            store.restore(horse);
         }
     }
 
     /**
-     * Randomly make a horse move forward or fall depending
-     * on its confidence rating
-     * A fallen horse cannot move
-     * 
-     * @param theHorse the horse to be moved
+     * Brings the Horse objects up to date with the latest tick of the race:
+     * how far they have run, whether they have fallen and their confidence
      */
-    public void moveHorse(Horse theHorse) {
-        // if the horse has fallen it cannot move,
-        // so only run if it has not fallen
-
-        if (!theHorse.hasFallen()) {
-            // the probability that the horse will move forward depends on the confidence;
-            if (Math.random() < theHorse.getConfidence()) {
-                theHorse.moveForward();
-                changeHorseConfidence(theHorse);
-            }
-
-            // the probability that the horse will fall is very small (max is 0.1)
-            // but will also will depends exponentially on confidence
-            // so if you double the confidence, the probability that it will fall is *2
-            if (Math.random() < (0.1 * theHorse.getConfidence() * theHorse.getConfidence())) {
-                theHorse.fall();
-                theHorse.horseFallenGUI();
-                changeHorseConfidence(theHorse);
+    private void updateHorses(RaceSnapshot snapshot) {
+        for (int i = 0; i < snapshot.getLaneCount(); i++) {
+            Horse horse = horses.get(i);
+            horse.setDistanceTravelled(snapshot.getDistance(i) * 10);
+            if (snapshot.hasFallen(i) && !horse.hasFallen()) {
+                horse.fall();
+                horse.horseFallenGUI();
             }
+            horse.setConfidenceTenths(snapshot.getConfidenceTenths(i));
+        }
+    }
 
-            // if the horse has not moved forward at all, then it has fallen
-            if (theHorse.getConfidence() == 0) {
-                theHorse.fall();
-                theHorse.horseFallenGUI();
-            }
+    /**
+     * Moves the horse labels to where the horses are part way between the
+     * last two ticks, so they glide instead of jumping once per tick
+     */
+    private void placeHorses(RaceSnapshot snapshot, double progress) {
+        for (int i = 0; i < snapshot.getLaneCount(); i++) {
+            horses.get(i).placeLabel((int) Math.round(snapshot.getDistance(i, progress) * 10));
         }
     }
 
     /**
-     * Determines if a horse has won the race
-     *
-     * @param theHorse The horse we are testing
-     * @return true if the horse has won, false otherwise.
+     * Works out how often the race should be drawn, once per refresh of the
+     * screen (60 times a second if that is unknown)
      */
-    private boolean raceWonBy(Horse theHorse) {
-        if (theHorse != null && theHorse.getDistanceTravelled() == ((raceLength * 10) - raceFrame.getHorseWidth())) {
-            return true;
-        } else {
-            return false;
+    static int frameDelay() {
+        int refreshRate = DisplayMode.REFRESH_RATE_UNKNOWN;
+        if (!GraphicsEnvironment.isHeadless()) {
+            refreshRate = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice()
+                    .getDisplayMode().getRefreshRate();
+        }
+        if (refreshRate == DisplayMode.REFRESH_RATE_UNKNOWN) {
+            refreshRate = 60;
         }
+        return Math.max(1, 1000 / refreshRate);
     }
 
     public void startRaceGUI() {
@@ -315,6 +316,7 @@ public class Race {
                     horses.get(currentHorseCount - 2).setBreed(breed);
                     horses.get(currentHorseCount - 2).setBreedIcon(icon);
                     horses.get(currentHorseCount - 2).setAccessory(accessories);
+                    restoreStats(horses.get(currentHorseCount - 2));
 
                 } else {
                     JOptionPane.showMessageDialog(null,
@@ -379,6 +381,7 @@ public class Race {
                     horses.get(currentHorseCount - 2).setBreed(breed);
                     horses.get(currentHorseCount - 2).setBreedIcon(icon);
                     horses.get(currentHorseCount - 2).setAccessory(accessories);
+                    restoreStats(horses.get(currentHorseCount - 2));
 
                 } else {
                     JOptionPane.showMessageDialog(null,
@@ -482,6 +485,7 @@ public class Race {
                     horses.get(currentHorseCount - 2).setBreed(breed);
                     horses.get(currentHorseCount - 2).setBreedIcon(icon);
                     horses.get(currentHorseCount - 2).setAccessory(accessories);
+                    restoreStats(horses.get(currentHorseCount - 2));
 
                 } else {
                     JOptionPane.showMessageDialog(null,
@@ -574,22 +578,14 @@ public class Race {
         label3.setAlignmentX(Component.CENTER_ALIGNMENT);
         horseDesignPanel.add(label3);
 
-        String currentDirectory = System.getProperty("user.dir");
-        // Create an array to hold the icons
+        // Create an array to hold the icons, loaded and scaled by AssetCache; a
+        // picture that is still loading is blank until whenLoaded below swaps it in
         ImageIcon[] icons = new ImageIcon[5];
         icons[0] = null;
-        icons[1] = new ImageIcon(
-                new ImageIcon(currentDirectory + "/horseIcon.png").getImage().getScaledInstance(25, 25,
-                        Image.SCALE_SMOOTH));
-        icons[2] = new ImageIcon(
-                new ImageIcon(currentDirectory + "/ponyIcon.png").getImage().getScaledInstance(25, 25,
-                        Image.SCALE_SMOOTH));
-        icons[3] = new ImageIcon(
-                new ImageIcon(currentDirectory + "/donkeyIcon.png").getImage().getScaledInstance(25, 25,
-                        Image.SCALE_SMOOTH));
-        icons[4] = new ImageIcon(
-                new ImageIcon(currentDirectory + "/unicornIcon.png").getImage().getScaledInstance(25, 25,
-                        Image.SCALE_SMOOTH));
+        icons[1] = AssetCache.getBreedIcon("Horse");
+        icons[2] = AssetCache.getBreedIcon("Pony");
+        icons[3] = AssetCache.getBreedIcon("Donkey");
+        icons[4] = AssetCache.getBreedIcon("Unicorn");
 
         // Create an array to hold the names
         String[] names = { "Select a Horse", "Horse", "Pony", "Donkey", "Unicorn" };
@@ -625,6 +621,16 @@ public class Race {
         breedsMenu.setAlignmentX(Component.CENTER_ALIGNMENT);
         horseDesignPanel.add(breedsMenu);
 
+        // Put each picture in the menu once it has loaded, without waiting for it here
+        Component menu = breedsMenu;
+        for (int i = 1; i < names.length; i++) {
+            Object[] item = (Object[]) model.getElementAt(i);
+            AssetCache.whenLoaded(names[i], icon -> {
+                item[0] = icon;
+                menu.repaint();
+            });
+        }
+
         JLabel accessoriesLabel = new JLabel(
                 "What accessories would you like horse " + currentHorseCount + " to have?");
         accessoriesLabel.setAlignmentX(Component.CENTER_ALIGNMENT);
@@ -648,8 +654,10 @@ public class Race {
         // Gets rid of menu window as it is no longer needed
         frame.dispose();
 
-        // Create a new RaceFrame
-        raceFrame = new RaceFrame(trackColour, raceLength, horseNum, horses, user);
+        // Create a new RaceFrame. The race has not been run if a horse has just been
+        // added, so any bet already placed (and paid for) stays on the same ledger
+        ledger = BettingLedger.forNextRace(ledger);
+        raceFrame = new RaceFrame(trackColour, raceLength, horseNum, horses, user, ledger);
 
         JButton startButton = new JButton("Start Race");
         startButton.setEnabled(true);
@@ -657,7 +665,8 @@ public class Race {
             @Override
             public void actionPerformed(ActionEvent e) {
                 if (timer != null) {
-                    timer.start(); // Start the timer
+                    simulation.start(); // Start the race
+                    timer.start(); // Start drawing it
                     startButton.setEnabled(false); // Disable the start button
                     addHorsebtn.setEnabled(false); // Disable the "Add Horse" button
                     raceFrame.disableBetBtn();
@@ -674,6 +683,9 @@ public class Race {
                     timer.stop(); // Stop the timer if it's running
                     timer = null; // Set the timer reference to null
                 }
+                if (simulation != null) {
+                    simulation.stop(); // Stop the race if it's still running
+                }
                 raceFrame.dispose(); // Close the current
                 if (statsFrame != null) {
                     statsFrame.dispose(); // Close the stats frame
@@ -694,7 +706,12 @@ public class Race {
             addHorsebtn.setEnabled(false);
         }
 
-        raceFrame.enableBetBtn();
+        // one bet per race, so betting stays closed if the bet was placed before the frame was rebuilt
+        if (ledger.getStaked() == 0) {
+            raceFrame.enableBetBtn();
+        } else {
+            raceFrame.disableBetBtn();
+        }
 
         // reset all the lanes (all horses not fallen and back to 0).
         for (Horse horse : horses) {
@@ -703,133 +720,253 @@ public class Race {
             }
         }
 
-        long startTime = System.currentTimeMillis();
+        // Every race gets its own seeded random number generator, and is recorded so
+        // it can be replayed exactly
+        long seed = new SplittableRandom().nextLong();
+        engine = RaceEngine.fromHorses(horses, RaceEngine.finishDistance(raceLength, raceFrame.getHorseWidth()),
+                new SplittableRandom(seed));
+        recording = engine.startRecording(seed);
+
+        simulation = new RaceSimulation(engine);
+        simulation.setSpeed(speed);
+        // the bets are settled from the race's events, as soon as there is a result
+        simulation.subscribe(ledger.settleOnResult());
+
+        JButton replayButton = new JButton("Replay");
+        replayButton.setEnabled(false);
+
+        // Create a Timer that draws the race once per screen refresh. The race itself
+        // runs on its own thread, so a slow repaint never slows the race down
+        timer = drawRace(simulation, false, snapshot -> {
+            endRace(snapshot, restartButton);
+            replayButton.setEnabled(true);
+        });
+
+        replayButton.addActionListener(e -> {
+            // a new race can only be set up once the replay is over
+            replayButton.setEnabled(false);
+            restartButton.setEnabled(false);
+            addHorsebtn.setEnabled(false);
+            replayRace(() -> {
+                replayButton.setEnabled(true);
+                restartButton.setEnabled(true);
+                addHorsebtn.setEnabled(horses.size() < horseNum);
+            });
+        });
+
+        JComboBox<String> speedMenu = new JComboBox<>(new String[] { "1x", "2x", "10x", "100x", "Instant" });
+        speedMenu.setSelectedItem(speed == RaceSimulation.SPEED_INSTANT ? "Instant" : (int) speed + "x");
+        speedMenu.setMaximumSize(new Dimension(80, 30));
+        speedMenu.addActionListener(e -> {
+            String selected = (String) speedMenu.getSelectedItem();
+            if (selected.equals("Instant")) {
+                speed = RaceSimulation.SPEED_INSTANT;
+            } else {
+                speed = Double.parseDouble(selected.substring(0, selected.length() - 1));
+            }
+            simulation.setSpeed(speed);
+        });
+
+        JMenuBar menuBar = new JMenuBar();
+        JMenu menu = new JMenu("Options");
+        menuBar.add(menu);
+        menuBar.add(startButton);
+        menuBar.add(restartButton);
+        menuBar.add(statsButton);
+        menuBar.add(addHorsebtn);
+        menuBar.add(replayButton);
+        menuBar.add(new JLabel(" Speed: "));
+        menuBar.add(speedMenu);
+
+        raceFrame.add(menuBar, BorderLayout.NORTH);
+
+    }
+
+    /**
+     * Creates a Timer that draws a race once per screen refresh, updating the
+     * horses whenever the simulation moves on a tick. A replay only moves the
+     * horse labels and leaves the horses themselves as the race left them.
+     */
+    private Timer drawRace(RaceSimulation raceSimulation, boolean replay, Consumer<RaceSnapshot> whenFinished) {
+        return new Timer(frameDelay(), new ActionListener() {
+            private int shownTick = 0;
+            private boolean[] shownFallen = new boolean[horses.size()]; // for a replay
 
-        // Create a Timer that updates the horse positions and repaints the GUI every
-        // 100 milliseconds
-        timer = new Timer(100, new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
-                // Update the positions of the horses
-
-                for (Horse horse : horses) {
-                    if (horse != null) {
-                        moveHorse(horse);
+                RaceSnapshot snapshot = raceSimulation.getSnapshot();
+
+                // Update the horses when the race has moved on a tick
+                if (snapshot.getTick() != shownTick) {
+                    shownTick = snapshot.getTick();
+                    if (replay) {
+                        showFallenLabels(snapshot);
+                    } else {
+                        updateHorses(snapshot);
                     }
+
+                    // update the horse details and bets labels that have changed
+                    raceFrame.updateDetails(user);
                 }
 
-                // update horse detail label
-                for (int i = 0; i < horses.size(); i++) {
-                    raceFrame.updateHorseDetails(i);
+                // Draw the horses part way between the last two ticks
+                double progress = snapshot.getProgress(System.nanoTime());
+                placeHorses(snapshot, progress);
+
+                // Once the last tick has been drawn, the race is over
+                if (snapshot.isFinished() && progress >= 1) {
+                    ((Timer) e.getSource()).stop(); // Stop the timer
+                    whenFinished.accept(snapshot);
                 }
+            }
 
-                // Check if any horse has won the race
-                int currentHorse = 0;
-                for (Horse horse : horses) {
-                    if (horse != null && raceWonBy(horse)) {
-                        ((Timer) e.getSource()).stop(); // Stop the timer
-                        // Display a message that the race is over
-                        JOptionPane.showMessageDialog(raceFrame, "The race is over!");
-                        // Display the winner
-                        long endTime = System.currentTimeMillis();
-                        double finishingTime = (endTime - startTime) / 1000.0; // convert to seconds
-
-                        JOptionPane.showMessageDialog(raceFrame, "And the winner is " + horse.getName() + " ");
-                        horse.updatePerformanceMetrics(finishingTime, 1);
-                        for (Horse otherhorse : horses) {
-                            if (otherhorse != null && otherhorse != horse) {
-                                otherhorse.updatePerformanceMetricsLoss(finishingTime);
-                            }
-                        }
-
-                        if (user.getHorseSelected() == currentHorse) {
-                            user.updateBalance(user.getBetAmount());
-                            user.setBetAmount(0);
-                            user.setHorseSelected(-1);
-                        } else {
-                            user.updateBalance(-user.getBetAmount());
-                            user.setBetAmount(0);
-                            user.setHorseSelected(-1);
-                        }
-
-                        // Finalise performance metrics and print them
-                        for (Horse allhorses : horses) {
-                            if (allhorses != null) {
-                                allhorses.finalisePerformanceMetrics();
-                            }
-                        }
-
-                        restartButton.setEnabled(true);
-
-                        if (horses.size() < horseNum) {
-                            addHorsebtn.setEnabled(true);
-                        } else {
-                            addHorsebtn.setEnabled(false);
-                        }
-
-                        break;
-
-                    } else if (allHorsesHaveFallen()) {
-
-                        ((Timer) e.getSource()).stop(); // Stop the timer
-                        JOptionPane.showMessageDialog(raceFrame, "All horses have fallen!");
-
-                        user.updateBalance(-user.getBetAmount());
-
-                        long endTime = System.currentTimeMillis();
-                        double finishingTime = (endTime - startTime) / 1000.0; // convert to seconds
-
-                        // Update performance metrics for all horses
-                        for (Horse otherhorse : horses) {
-                            if (otherhorse != null) {
-                                otherhorse.updatePerformanceMetricsLoss(finishingTime);
-                            }
-                        }
-
-                        // Finalise performance metrics and print them
-                        for (Horse allhorses : horses) {
-                            if (allhorses != null) {
-                                allhorses.finalisePerformanceMetrics();
-                            }
-                        }
-
-                        restartButton.setEnabled(true);
-
-                        if (horses.size() < horseNum) {
-                            addHorsebtn.setEnabled(true);
-                        } else {
-                            addHorsebtn.setEnabled(false);
-                        }
-
-                        break;
+            private void showFallenLabels(RaceSnapshot snapshot) {
+                for (int i = 0; i < snapshot.getLaneCount(); i++) {
+                    if (snapshot.hasFallen(i) != shownFallen[i]) {
+                        shownFallen[i] = snapshot.hasFallen(i);
+                        horses.get(i).showLabelFallen(shownFallen[i]);
                     }
-                    currentHorse++;
                 }
+            }
+        });
+    }
+
+    /**
+     * Shows the last race again from the start at normal speed (or the
+     * chosen speed, unless that is instant). Only the horse labels move: the
+     * horses' distances, falls and confidences, their stats and the bet are
+     * not changed, as the race has already been counted.
+     */
+    private void replayRace(Runnable whenFinished) {
+        for (Horse horse : horses) {
+            if (horse != null) {
+                horse.placeLabel(0);
+                horse.showLabelFallen(false);
+            }
+        }
+
+        simulation = new RaceSimulation(RaceEngine.replay(recording));
+        simulation.setSpeed(speed == RaceSimulation.SPEED_INSTANT ? 1 : speed);
+        timer = drawRace(simulation, true, snapshot -> whenFinished.run());
+        simulation.start();
+        timer.start();
+    }
+
+    /**
+     * Shows the result of a finished race, records each horse's performance
+     * and settles the bet. Finishing times are worked out from the number of
+     * ticks the race took, so they do not depend on how fast it was shown.
+     */
+    private void endRace(RaceSnapshot snapshot, JButton restartButton) {
+        int winner = snapshot.getWinner();
+        double finishingTime = RaceSimulation.toSeconds(snapshot.getTick());
+        if (winner != RaceEngine.NO_WINNER) {
+            Horse horse = horses.get(winner);
+            // Display a message that the race is over
+            JOptionPane.showMessageDialog(raceFrame, "The race is over!");
+            // Display the winner
+
+            JOptionPane.showMessageDialog(raceFrame, "And the winner is " + horse.getName() + " ");
+            horse.updatePerformanceMetrics(finishingTime, 1);
+            for (Horse otherhorse : horses) {
+                if (otherhorse != null && otherhorse != horse) {
+                    otherhorse.updatePerformanceMetricsLoss(finishingTime);
+                }
+            }
 
-                // Repaint the GUI to reflect the new positions of the horses
-                raceFrame.repaint();
+            // the stakes were taken when the bets were placed, and the ledger pays the
+            // winning bets itself once the race's result comes through
+            user.setBetAmount(0);
+            user.setHorseSelected(-1);
 
-                // update bets label
-                raceFrame.updateStatDetails(user);
+            // Finalise performance metrics and print them
+            for (Horse allhorses : horses) {
+                if (allhorses != null) {
+                    allhorses.finalisePerformanceMetrics();
+                }
+            }
 
+            restartButton.setEnabled(true);
+
+            if (horses.size() < horseNum) {
+                addHorsebtn.setEnabled(true);
+            } else {
+                addHorsebtn.setEnabled(false);
             }
-        });
+        } else {
+            JOptionPane.showMessageDialog(raceFrame, "All horses have fallen!");
 
-        JMenuBar menuBar = new JMenuBar();
-        JMenu menu = new JMenu("Options");
-        menuBar.add(menu);
-        menuBar.add(startButton);
-        menuBar.add(restartButton);
-        menuBar.add(statsButton);
-        menuBar.add(addHorsebtn);
+            // every bet loses, and its stake has already been taken
+            user.setBetAmount(0);
+            user.setHorseSelected(-1);
 
-        raceFrame.add(menuBar, BorderLayout.NORTH);
 
+            // Update performance metrics for all horses
+            for (Horse otherhorse : horses) {
+                if (otherhorse != null) {
+                    otherhorse.updatePerformanceMetricsLoss(finishingTime);
+                }
+            }
+
+            // Finalise performance metrics and print them
+            for (Horse allhorses : horses) {
+                if (allhorses != null) {
+                    allhorses.finalisePerformanceMetrics();
+                }
+            }
+
+            restartButton.setEnabled(true);
+
+            if (horses.size() < horseNum) {
+                addHorsebtn.setEnabled(true);
+            } else {
+                addHorsebtn.setEnabled(false);
+            }
+        }
+
+        // Save the result (this does not wait for the file)
+        if (store != null) {
+            try {
+                store.appendRace(horses, winner, finishingTime);
+            } catch (IllegalStateException | IllegalArgumentException e) {
+                System.err.println("Could not save the race: " + e.getMessage());
+            }
+        }
+
+        // The ledger settles itself from the race's events, but the simulation drops
+        // events for a subscriber that falls behind, so settle it here if that has not
+        // happened yet. A failed payout is reported through the settlement below.
+        if (!ledger.isClosed()) {
+            try {
+                ledger.settle(winner);
+            } catch (ArithmeticException e) {
+                // shown once the settlement completes
+            }
+        }
+
+        // Save and show the new balance once the ledger has paid out, or failed to
+        RaceFrame finishedFrame = raceFrame;
+        ledger.getSettlement().whenComplete((settled, error) -> SwingUtilities.invokeLater(() -> {
+            if (error != null) {
+                JOptionPane.showMessageDialog(finishedFrame, "Your winnings could not be paid: " + error.getMessage());
+            }
+            if (store != null) {
+                store.appendBalance(user.getBalance());
+            }
+            finishedFrame.updateDetails(user);
+        }));
+
+        // The horses' confidences have changed, so start working out the odds of the
+        // next race while this one's result is on screen
+        OddsCache.getOdds(horses, engine.getFinishDistance());
+
+        // update bets label
+        raceFrame.updateDetails(user);
     }
 
     private void showStats() {
         statsFrame = new JFrame("Horse Stats");
-        statsFrame.setSize(300, 300);
+        statsFrame.setSize(300, 340);
         statsFrame.setLayout(new BorderLayout());
 
         JPanel statspanel = new JPanel();
@@ -0,0 +1,333 @@
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.function.LongSupplier;
+
+/**
+ * Benchmarks for the hot paths of the simulation: a single engine tick
+ * (what Race.moveHorse used to do), a full race for 2-12 lanes and track
+ * lengths 10-150, the exact odds of a 12 horse field from OddsEngine, a
+ * load generator placing random bets in a TotePool (settling it every
+ * 100,000 bets), Horse.setConfidence, Horse.calculateOdds, HorseIcon.paintIcon and
+ * HorseIcon's recolouring (against the original per-pixel loop).
+ *
+ * Each benchmark is warmed up and then measured over several timed
+ * iterations. The results are printed and written as JSON. The JSON is this
+ * harness's own format, not JMH output, though it uses the same names as
+ * JMH for the fields the two share (benchmark, mode, params, primaryMetric
+ * and so on), so runs from different versions can be compared.
+ *
+ * Usage: java RaceBenchmark [results file] [name filter]
+ *
+ * @author Rahman Imtiaz
+ * @version 1.0
+ */
+
+public class RaceBenchmark {
+    private static final int WARMUP_ITERATIONS = 3;
+    private static final int MEASUREMENT_ITERATIONS = 5;
+    private static final long ITERATION_NANOS = 1_000_000_000L;
+
+    // the value a Student's t variable stays within, either side of 0, with
+    // probability 99.9%, for 1 to 10 degrees of freedom
+    private static final double[] T_999 = { 636.619, 31.599, 12.924, 8.610, 6.869, 5.959, 5.408, 5.041, 4.781,
+        4.587 };
+    private static final int[] LANES = { 2, 4, 6, 8, 10, 12 };
+    private static final int[] RACE_LENGTHS = { 10, 25, 50, 100, 150 };
+
+    // results are added here so the JIT cannot remove the work being measured
+    private static volatile long sink;
+
+    private final List<Result> results = new ArrayList<>();
+    private final String filter;
+
+    public RaceBenchmark(String filter) {
+        this.filter = filter;
+    }
+
+    public static void main(String[] args) throws IOException {
+        System.setProperty("java.awt.headless", "true");
+
+        String resultsFile = args.length > 0 ? args[0] : "benchmark-results.json";
+        RaceBenchmark benchmark = new RaceBenchmark(args.length > 1 ? args[1] : "");
+
+        benchmark.addBenchmarks();
+        benchmark.writeJson(Paths.get(resultsFile));
+        System.out.println("Results written to " + resultsFile);
+    }
+
+    private void addBenchmarks() {
+        for (int lanes : LANES) {
+            RaceEngine engine = newEngine(lanes, 150, 1);
+            run("moveHorse", params("lanes", lanes), () -> {
+                if (engine.tick()) {
+                    engine.reset();
+                }
+                return engine.getDistance(0);
+            });
+        }
+
+        for (int lanes : LANES) {
+            for (int raceLength : RACE_LENGTHS) {
+                RaceEngine engine = newEngine(lanes, raceLength, 2);
+                run("fullRace", params("lanes", lanes, "raceLength", raceLength), () -> {
+                    engine.reset();
+                    engine.run();
+                    return engine.getTicks();
+                });
+            }
+        }
+
+        for (int raceLength : RACE_LENGTHS) {
+            double[] confidences = randomConfidences(12, new SplittableRandom(3));
+            int finishDistance = RaceEngine.finishDistance(raceLength, RaceEngine.HORSE_WIDTH);
+            run("odds", params("lanes", 12, "raceLength", raceLength), () -> Double.doubleToRawLongBits(
+                    new OddsEngine(finishDistance, confidences).getWinChance(0)));
+        }
+
+        // one operation is a bet and reading the new odds it gives, as a betting screen would
+        TotePool.Pool[] pools = TotePool.Pool.values();
+        SplittableRandom betRandom = new SplittableRandom(4);
+        User bettor = new User(Integer.MAX_VALUE);
+        TotePool[] tote = { new TotePool(12) };
+        int[] bets = new int[1];
+        run("toteBet", params("lanes", 12, "betsPerRace", 100_000), () -> {
+            if (++bets[0] == 100_000) {
+                tote[0].settle(new int[] { 0, 1, 2 });
+                tote[0] = new TotePool(12);
+                bettor.setBalance(Integer.MAX_VALUE);
+                bets[0] = 0;
+            }
+            TotePool.Pool pool = pools[betRandom.nextInt(pools.length)];
+            int lane = betRandom.nextInt(12);
+            tote[0].placeBet(bettor, pool, lane, 1 + betRandom.nextInt(20));
+            return Double.doubleToRawLongBits(tote[0].getOdds(pool, lane));
+        });
+
+        Horse horse = new Horse();
+        double[] confidences = { 0.7999999999999999, 0.25, 0.35, 1.2, -0.1, 0.45, 0.95 };
+        int[] next = new int[1];
+        run("setConfidence", params(), () -> {
+            horse.setConfidence(confidences[next[0]++ % confidences.length]);
+            return horse.getConfidenceTenths();
+        });
+
+        Horse raced = new Horse();
+        for (int i = 1; i <= 20; i++) {
+            raced.updatePerformanceMetrics(i * 1.5, i % 3 == 0 ? 1 : 0);
+        }
+        raced.finalisePerformanceMetrics();
+        run("calculateOdds", params(), () -> Double.doubleToRawLongBits(raced.calculateOdds(100)));
+
+        HorseIcon icon = new HorseIcon(Color.GREEN, Color.MAGENTA, "\uD83D\uDC0E");
+        BufferedImage canvas = new BufferedImage(icon.getIconWidth(), icon.getIconHeight(),
+                BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = canvas.createGraphics();
+        run("paintIcon", params(), () -> {
+            icon.paintIcon(null, g, 0, 0);
+            return canvas.getRGB(30, 30);
+        });
+        g.dispose();
+
+        // the green-to-overlap recolouring on its own, the original per-pixel
+        // loop against HorseIcon.recolour, both starting from the same pixels
+        BufferedImage source = new BufferedImage(60, 60, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D sourceGraphics = source.createGraphics();
+        new HorseIcon(Color.GREEN, Color.GREEN, "\uD83D\uDC0E").paintIcon(null, sourceGraphics, 0, 0);
+        sourceGraphics.setColor(new Color(40, 180, 60));
+        sourceGraphics.fillOval(10, 10, 40, 40);
+        sourceGraphics.dispose();
+        int[] sourcePixels = ((DataBufferInt) source.getRaster().getDataBuffer()).getData();
+
+        BufferedImage work = new BufferedImage(60, 60, BufferedImage.TYPE_INT_ARGB);
+        int[] workPixels = ((DataBufferInt) work.getRaster().getDataBuffer()).getData();
+        run("recolourLegacy", params(), () -> {
+            System.arraycopy(sourcePixels, 0, workPixels, 0, workPixels.length);
+            recolourLegacy(work, Color.MAGENTA);
+            return workPixels[1830];
+        });
+        run("recolour", params(), () -> {
+            System.arraycopy(sourcePixels, 0, workPixels, 0, workPixels.length);
+            HorseIcon.recolour(workPixels, Color.MAGENTA);
+            return workPixels[1830];
+        });
+    }
+
+    // the recolouring loop HorseIcon.paintIcon used before HorseIcon.recolour
+    private static void recolourLegacy(BufferedImage mirroredImg, Color overlapColor) {
+        for (int i = 0; i < mirroredImg.getHeight(); i++) {
+            for (int j = 0; j < mirroredImg.getWidth(); j++) {
+                Color color = new Color(mirroredImg.getRGB(j, i));
+
+                if (color.getGreen() > color.getRed() && color.getGreen() > color.getBlue()) {
+                    double luminance = 0.2126 * color.getRed() + 0.7152 * color.getGreen() + 0.0722 * color.getBlue();
+
+                    double overlapLuminance = 0.2126 * overlapColor.getRed() + 0.7152 * overlapColor.getGreen()
+                            + 0.0722 * overlapColor.getBlue();
+                    double ratio = luminance / overlapLuminance;
+
+                    int newRed = Math.min(255, (int) (overlapColor.getRed() * ratio));
+                    int newGreen = Math.min(255, (int) (overlapColor.getGreen() * ratio));
+                    int newBlue = Math.min(255, (int) (overlapColor.getBlue() * ratio));
+
+                    Color alteredColor = new Color(newRed, newGreen, newBlue);
+                    mirroredImg.setRGB(j, i, alteredColor.getRGB());
+                }
+            }
+        }
+    }
+
+    private static RaceEngine newEngine(int lanes, int raceLength, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        double[] confidences = randomConfidences(lanes, random);
+        return new RaceEngine(RaceEngine.finishDistance(raceLength, RaceEngine.HORSE_WIDTH), confidences, random);
+    }
+
+    private static double[] randomConfidences(int lanes, SplittableRandom random) {
+        double[] confidences = new double[lanes];
+        for (int i = 0; i < lanes; i++) {
+            confidences[i] = (1 + random.nextInt(10)) / 10.0;
+        }
+        return confidences;
+    }
+
+    private static Map<String, String> params(Object... keysAndValues) {
+        Map<String, String> params = new LinkedHashMap<>();
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            params.put(String.valueOf(keysAndValues[i]), String.valueOf(keysAndValues[i + 1]));
+        }
+        return params;
+    }
+
+    /**
+     * Warms up and measures one benchmark, recording its throughput.
+     *
+     * @param name      the name of the benchmark
+     * @param params    the parameters it is run with
+     * @param operation a single operation, returning a value to consume
+     */
+    private void run(String name, Map<String, String> params, LongSupplier operation) {
+        if (!name.contains(filter)) {
+            return;
+        }
+
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            measure(operation);
+        }
+        double[] scores = new double[MEASUREMENT_ITERATIONS];
+        for (int i = 0; i < MEASUREMENT_ITERATIONS; i++) {
+            scores[i] = measure(operation);
+        }
+
+        Result result = new Result(name, params, scores);
+        results.add(result);
+        System.out.println(String.format("%-14s %-32s %,16.1f +- %,.1f ops/s", name, params, result.score,
+                result.error));
+    }
+
+    // runs the operation for one iteration and returns the operations per second
+    private static double measure(LongSupplier operation) {
+        long operations = 0;
+        long total = 0;
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            for (int i = 0; i < 256; i++) {
+                total += operation.getAsLong();
+            }
+            operations += 256;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < ITERATION_NANOS);
+        sink += total;
+        return operations / (elapsed / 1e9);
+    }
+
+    private void writeJson(Path path) throws IOException {
+        StringBuilder json = new StringBuilder("[\n");
+        for (int i = 0; i < results.size(); i++) {
+            results.get(i).appendJson(json);
+            json.append(i < results.size() - 1 ? ",\n" : "\n");
+        }
+        json.append("]\n");
+        Files.write(path, json.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static class Result {
+        private final String name;
+        private final Map<String, String> params;
+        private final double[] scores;
+        private final double score;
+        private final double error;
+
+        Result(String name, Map<String, String> params, double[] scores) {
+            this.name = name;
+            this.params = params;
+            this.scores = scores;
+
+            double sum = 0;
+            for (double s : scores) {
+                sum += s;
+            }
+            this.score = sum / scores.length;
+
+            // half width of a 99.9% confidence interval, as JMH reports it
+            double squares = 0;
+            for (double s : scores) {
+                squares += (s - score) * (s - score);
+            }
+            double stdDev = Math.sqrt(squares / (scores.length - 1));
+            // more than 10 degrees of freedom uses the value for 10, which gives a slightly wider interval
+            double t = T_999[Math.min(scores.length - 1, T_999.length) - 1];
+            this.error = t * stdDev / Math.sqrt(scores.length);
+        }
+
+        void appendJson(StringBuilder json) {
+            json.append("    {\n");
+            json.append("        \"benchmark\" : \"RaceBenchmark.").append(name).append("\",\n");
+            json.append("        \"mode\" : \"thrpt\",\n");
+            json.append("        \"threads\" : 1,\n");
+            json.append("        \"jvm\" : \"").append(escape(System.getProperty("java.home"))).append("\",\n");
+            json.append("        \"jdkVersion\" : \"").append(System.getProperty("java.version")).append("\",\n");
+            json.append("        \"vmName\" : \"").append(escape(System.getProperty("java.vm.name"))).append("\",\n");
+            json.append("        \"warmupIterations\" : ").append(WARMUP_ITERATIONS).append(",\n");
+            json.append("        \"warmupTime\" : \"1 s\",\n");
+            json.append("        \"measurementIterations\" : ").append(MEASUREMENT_ITERATIONS).append(",\n");
+            json.append("        \"measurementTime\" : \"1 s\",\n");
+            json.append("        \"params\" : {");
+            int count = 0;
+            for (Map.Entry<String, String> param : params.entrySet()) {
+                json.append(count++ == 0 ? "\n" : ",\n");
+                json.append("            \"").append(param.getKey()).append("\" : \"").append(param.getValue())
+                        .append("\"");
+            }
+            json.append(count == 0 ? "},\n" : "\n        },\n");
+            json.append("        \"primaryMetric\" : {\n");
+            json.append("            \"score\" : ").append(score).append(",\n");
+            json.append("            \"scoreError\" : ").append(error).append(",\n");
+            json.append("            \"scoreUnit\" : \"ops/s\",\n");
+            json.append("            \"rawData\" : [\n                [\n");
+            for (int i = 0; i < scores.length; i++) {
+                json.append("                    ").append(scores[i]).append(i < scores.length - 1 ? ",\n" : "\n");
+            }
+            json.append("                ]\n            ]\n");
+            json.append("        },\n");
+            json.append("        \"secondaryMetrics\" : {\n        }\n");
+            json.append("    }");
+        }
+
+        private static String escape(String value) {
+            return value.replace("\\", "\\\\").replace("\"", "\\\"");
+        }
+    }
+}
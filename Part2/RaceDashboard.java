@@ -0,0 +1,310 @@
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A view of many races at once, each drawn as a compact strip with one thin
+ * line per lane. The whole dashboard is one component that paints every
+ * strip itself, driven by a single Swing timer, so there are no labels or
+ * panels per horse for Swing to lay out and move. Each race runs on its own
+ * RaceSimulation, and every frame just reads the latest snapshot of each
+ * one and draws the horses part way between their last two ticks.
+ *
+ * Only the strips that overlap the area being repainted are drawn, so the
+ * dashboard can sit in a scroll pane with any number of races.
+ *
+ * Usage: java RaceDashboard [races] [lanes] [race length]
+ *
+ * @author Rahman Imtiaz
+ * @version 1.0
+ */
+
+public class RaceDashboard extends JComponent implements Scrollable {
+    private static final long serialVersionUID = 1L;
+    private static final long RESULT_NANOS = TimeUnit.SECONDS.toNanos(2); // how long a result stays up
+    private static final int LANE_HEIGHT = 8;
+    private static final int HEADER_HEIGHT = 16; // room for the race's title above its lanes
+    private static final int STRIP_WIDTH = 300;
+    private static final int GAP = 6;
+    private static final int MARGIN = 6; // space inside a strip around the track
+    private static final int HORSE_SIZE = 6;
+
+    private static final Color BACKGROUND = Color.decode("#191a1f");
+    private static final Color STRIP_COLOUR = Color.decode("#2b2d38");
+    private static final Color TRACK_COLOUR = Color.decode("#3c3f4d");
+    private static final Color FALLEN_COLOUR = Color.GRAY;
+    private static final Color WINNER_COLOUR = Color.decode("#ffd700");
+    private static final Color[] LANE_COLOURS = new Color[12];
+
+    static {
+        for (int lane = 0; lane < LANE_COLOURS.length; lane++) {
+            LANE_COLOURS[lane] = Color.getHSBColor((float) lane / LANE_COLOURS.length, 0.6f, 1f);
+        }
+    }
+
+    private final List<Track> tracks = new ArrayList<>();
+    private final Timer timer;
+    private long lastFrameNanos; // how long the last frame took to paint
+
+    /**
+     * Constructor for objects of class RaceDashboard
+     */
+    public RaceDashboard() {
+        setOpaque(true);
+        setFont(new Font(Font.SANS_SERIF, Font.PLAIN, 11));
+        // the number of columns, and so the height, changes with the width
+        addComponentListener(new ComponentAdapter() {
+            @Override
+            public void componentResized(ComponentEvent e) {
+                revalidate();
+            }
+        });
+        timer = new Timer(Race.frameDelay(), e -> {
+            for (Track track : tracks) {
+                if (track.simulation.isFinished()) {
+                    track.finished();
+                }
+            }
+            repaint();
+        });
+    }
+
+    public static void main(String[] args) {
+        int raceCount = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+        int lanes = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int raceLength = args.length > 2 ? Integer.parseInt(args[2]) : 50;
+
+        SwingUtilities.invokeLater(() -> {
+            RaceDashboard dashboard = new RaceDashboard();
+            SplittableRandom random = new SplittableRandom();
+            for (int i = 1; i <= raceCount; i++) {
+                dashboard.addRepeatingRace("Race " + i, lanes, RaceEngine.finishDistance(raceLength, RaceEngine.HORSE_WIDTH),
+                        random.split());
+            }
+
+            JFrame frame = new JFrame("Race Dashboard");
+            frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+            frame.add(new JScrollPane(dashboard));
+            frame.setSize(1000, 800);
+            frame.setVisible(true);
+            dashboard.start();
+        });
+    }
+
+    /**
+     * Adds a race to the dashboard. It is started if the dashboard already
+     * has been.
+     *
+     * @param title          the name shown above the race
+     * @param simulation     the race
+     * @param finishDistance the number of steps a horse needs to win
+     */
+    public void addRace(String title, RaceSimulation simulation, int finishDistance) {
+        addTrack(new Track(title, simulation, finishDistance));
+    }
+
+    /**
+     * Adds a race of horses with random confidence which starts again with
+     * a new field whenever it finishes, so the dashboard never runs out of
+     * races to show.
+     *
+     * @param title          the name shown above the race
+     * @param lanes          the number of horses
+     * @param finishDistance the number of steps a horse needs to win
+     * @param random         where the confidences and every move come from
+     */
+    public void addRepeatingRace(String title, int lanes, int finishDistance, SplittableRandom random) {
+        Track track = new Track(title, null, finishDistance) {
+            @Override
+            void finished() {
+                // leave the result up for a couple of seconds before the next race
+                long now = System.nanoTime();
+                if (nextRaceAt == 0) {
+                    nextRaceAt = now + RESULT_NANOS;
+                } else if (now - nextRaceAt >= 0) {
+                    simulation = newRandomRace(lanes, finishDistance, random);
+                    simulation.start();
+                    nextRaceAt = 0;
+                }
+            }
+        };
+        track.simulation = newRandomRace(lanes, finishDistance, random);
+        addTrack(track);
+    }
+
+    private static RaceSimulation newRandomRace(int lanes, int finishDistance, SplittableRandom random) {
+        double[] confidences = new double[lanes];
+        for (int lane = 0; lane < lanes; lane++) {
+            confidences[lane] = 0.1 + (random.nextInt(9) / 10.0);
+        }
+        return new RaceSimulation(new RaceEngine(finishDistance, confidences, random.split()));
+    }
+
+    private void addTrack(Track track) {
+        tracks.add(track);
+        if (timer.isRunning()) {
+            track.simulation.start();
+        }
+        revalidate();
+        repaint();
+    }
+
+    /**
+     * Starts every race and the timer that redraws them.
+     */
+    public void start() {
+        for (Track track : tracks) {
+            track.simulation.start();
+        }
+        timer.start();
+    }
+
+    /**
+     * Stops every race and the timer.
+     */
+    public void stop() {
+        timer.stop();
+        for (Track track : tracks) {
+            track.simulation.stop();
+        }
+    }
+
+    /**
+     * Returns how long the last frame took to paint.
+     *
+     * @return the time in nanoseconds
+     */
+    public long getLastFrameNanos() {
+        return lastFrameNanos;
+    }
+
+    private int columns() {
+        return Math.max(1, (getWidth() - GAP) / (STRIP_WIDTH + GAP));
+    }
+
+    private int stripHeight() {
+        int lanes = 1;
+        for (Track track : tracks) {
+            lanes = Math.max(lanes, track.simulation.getSnapshot().getLaneCount());
+        }
+        return HEADER_HEIGHT + (lanes * LANE_HEIGHT) + MARGIN;
+    }
+
+    @Override
+    public Dimension getPreferredSize() {
+        int columns = getWidth() > 0 ? columns() : 3;
+        int rows = (tracks.size() + columns - 1) / columns;
+        return new Dimension(GAP + (columns * (STRIP_WIDTH + GAP)), GAP + (rows * (stripHeight() + GAP)));
+    }
+
+    // the strips wrap to the width of the scroll pane, which only scrolls up and down
+    @Override
+    public Dimension getPreferredScrollableViewportSize() {
+        return getPreferredSize();
+    }
+
+    @Override
+    public int getScrollableUnitIncrement(Rectangle visibleRect, int orientation, int direction) {
+        return stripHeight() + GAP;
+    }
+
+    @Override
+    public int getScrollableBlockIncrement(Rectangle visibleRect, int orientation, int direction) {
+        return visibleRect.height;
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportWidth() {
+        return true;
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportHeight() {
+        return false;
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        long start = System.nanoTime();
+        Graphics2D g2d = (Graphics2D) g;
+        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g2d.setColor(BACKGROUND);
+        g2d.fillRect(0, 0, getWidth(), getHeight());
+
+        Rectangle clip = g2d.getClipBounds();
+        int columns = columns();
+        int stripHeight = stripHeight();
+        for (int i = 0; i < tracks.size(); i++) {
+            int x = GAP + ((i % columns) * (STRIP_WIDTH + GAP));
+            int y = GAP + ((i / columns) * (stripHeight + GAP));
+            if (clip == null || clip.intersects(x, y, STRIP_WIDTH, stripHeight)) {
+                paintTrack(g2d, tracks.get(i), x, y, stripHeight, start);
+            }
+        }
+        lastFrameNanos = System.nanoTime() - start;
+    }
+
+    private void paintTrack(Graphics2D g2d, Track track, int x, int y, int height, long now) {
+        RaceSnapshot snapshot = track.simulation.getSnapshot();
+        double progress = snapshot.getProgress(now);
+
+        g2d.setColor(STRIP_COLOUR);
+        g2d.fillRoundRect(x, y, STRIP_WIDTH, height, 8, 8);
+
+        String status;
+        if (!snapshot.isFinished()) {
+            status = "tick " + snapshot.getTick();
+        } else if (snapshot.getWinner() == RaceEngine.NO_WINNER) {
+            status = "all fell";
+        } else {
+            status = "lane " + (snapshot.getWinner() + 1) + " won";
+        }
+        g2d.setColor(Color.WHITE);
+        g2d.drawString(track.title + "  " + status, x + MARGIN, y + HEADER_HEIGHT - 4);
+
+        int trackLeft = x + MARGIN;
+        int trackWidth = STRIP_WIDTH - (2 * MARGIN) - HORSE_SIZE;
+        for (int lane = 0; lane < snapshot.getLaneCount(); lane++) {
+            int laneY = y + HEADER_HEIGHT + (lane * LANE_HEIGHT);
+            g2d.setColor(TRACK_COLOUR);
+            g2d.drawLine(trackLeft, laneY + (LANE_HEIGHT / 2), trackLeft + trackWidth + HORSE_SIZE,
+                    laneY + (LANE_HEIGHT / 2));
+
+            double along = Math.min(1, snapshot.getDistance(lane, progress) / track.finishDistance);
+            int horseX = trackLeft + (int) Math.round(along * trackWidth);
+            int horseY = laneY + ((LANE_HEIGHT - HORSE_SIZE) / 2);
+            if (snapshot.hasFallen(lane)) {
+                g2d.setColor(FALLEN_COLOUR);
+                g2d.drawLine(horseX, horseY, horseX + HORSE_SIZE, horseY + HORSE_SIZE);
+                g2d.drawLine(horseX, horseY + HORSE_SIZE, horseX + HORSE_SIZE, horseY);
+            } else {
+                g2d.setColor(lane == snapshot.getWinner() ? WINNER_COLOUR
+                        : LANE_COLOURS[lane % LANE_COLOURS.length]);
+                g2d.fillOval(horseX, horseY, HORSE_SIZE, HORSE_SIZE);
+            }
+        }
+    }
+
+    // A race on the dashboard
+    private static class Track {
+        private final String title;
+        private final int finishDistance;
+        RaceSimulation simulation;
+        long nextRaceAt; // when a finished race is replaced, or 0 if not yet worked out
+
+        Track(String title, RaceSimulation simulation, int finishDistance) {
+            this.title = title;
+            this.simulation = simulation;
+            this.finishDistance = finishDistance;
+        }
+
+        // called on every frame once the race is over
+        void finished() {
+        }
+    }
+}
@@ -0,0 +1,144 @@
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * What RaceFrame shows about a race besides the track: the name and
+ * confidence of each horse, and the odds, bet and balance in the betting
+ * panel. It remembers the values last shown, so each frame the GUI can ask
+ * which have changed and set the text of just those labels. Working out
+ * what changed only compares numbers; no text is built for a value that is
+ * the same as before.
+ *
+ * Nothing here touches Swing, so it can be refreshed on any thread, but
+ * RaceFrame only uses it on the Swing thread.
+ *
+ * @author Rahman Imtiaz
+ * @version 1.0
+ */
+
+public class RaceDetails {
+    private final List<Horse> horses;
+    private final String[] names;
+    private final double[] confidences;
+    private final BitSet changedHorses = new BitSet();
+
+    private OddsEngine odds;
+    private int oddsLane = -1;
+    private boolean oddsChanged = true;
+    private int betAmount;
+    private boolean betAmountChanged = true;
+    private int balance;
+    private boolean balanceChanged = true;
+
+    /**
+     * Constructor for objects of class RaceDetails, starting from the values
+     * the horses have now
+     *
+     * @param horses the horses in the race, in lane order
+     */
+    public RaceDetails(List<Horse> horses) {
+        this.horses = horses;
+        this.names = new String[horses.size()];
+        this.confidences = new double[horses.size()];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = horses.get(i).getName();
+            confidences[i] = horses.get(i).getConfidence();
+        }
+    }
+
+    /**
+     * Compares the horses and the betting values with those last shown and
+     * notes which have changed.
+     *
+     * @param user         the user betting on the race
+     * @param selectedLane the lane whose odds are shown
+     * @param odds         the odds of the race, or null if they are not
+     *                     ready yet
+     * @return whether anything has changed since markShown was last called
+     */
+    public boolean refresh(User user, int selectedLane, OddsEngine odds) {
+        for (int i = 0; i < names.length; i++) {
+            Horse horse = horses.get(i);
+            String name = horse.getName();
+            double confidence = horse.getConfidence();
+            if (confidence != confidences[i] || !name.equals(names[i])) {
+                names[i] = name;
+                confidences[i] = confidence;
+                changedHorses.set(i);
+            }
+        }
+
+        if (odds != this.odds || selectedLane != oddsLane) {
+            this.odds = odds;
+            this.oddsLane = selectedLane;
+            oddsChanged = true;
+        }
+        if (user.getBetAmount() != betAmount) {
+            betAmount = user.getBetAmount();
+            betAmountChanged = true;
+        }
+        if (user.getBalance() != balance) {
+            balance = user.getBalance();
+            balanceChanged = true;
+        }
+        return hasChanges();
+    }
+
+    public boolean hasChanges() {
+        return !changedHorses.isEmpty() || oddsChanged || betAmountChanged || balanceChanged;
+    }
+
+    /**
+     * Returns the next lane, from a given one, whose horse has changed.
+     *
+     * @param fromLane the lane to start looking from
+     * @return the lane, or -1 if no more have changed
+     */
+    public int nextChangedHorse(int fromLane) {
+        return changedHorses.nextSetBit(fromLane);
+    }
+
+    public boolean isOddsChanged() {
+        return oddsChanged;
+    }
+
+    public boolean isBetAmountChanged() {
+        return betAmountChanged;
+    }
+
+    public boolean isBalanceChanged() {
+        return balanceChanged;
+    }
+
+    /**
+     * Notes that every change has been shown.
+     */
+    public void markShown() {
+        changedHorses.clear();
+        oddsChanged = false;
+        betAmountChanged = false;
+        balanceChanged = false;
+    }
+
+    /**
+     * Returns the text shown next to a lane.
+     *
+     * @param lane the lane
+     * @return the horse's name and confidence
+     */
+    public String getHorseText(int lane) {
+        return " " + names[lane] + "\n(Current confidence " + confidences[lane] + ")";
+    }
+
+    public String getBetAmountText() {
+        return "Bet Amount: " + betAmount;
+    }
+
+    public String getBalanceText() {
+        return "Balance: £" + balance;
+    }
+
+    public int getLaneCount() {
+        return names.length;
+    }
+}
@@ -0,0 +1,347 @@
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.random.RandomGenerator;
+
+/**
+ * A headless version of the race rules used by Race. It steps races held in
+ * a RaceState and never touches any Swing components, so whole races can be
+ * simulated in a tight loop (for example when pricing bets). One engine can
+ * hold many races with the same field and step them all together.
+ *
+ * Race uses this class to run the race shown in the GUI as well, so the
+ * rules for moving, falling, confidence changes and winning only live here.
+ * Distances are counted in steps, one step being one call to
+ * Horse.moveForward().
+ *
+ * The first race can be recorded as it runs (see startRecording), and an
+ * engine created by replay plays a recorded race back using the recorded
+ * moves and falls instead of random numbers.
+ *
+ * @author Rahman Imtiaz
+ * @version 1.0
+ */
+
+public class RaceEngine {
+    public static final int NO_WINNER = -1;
+    public static final int HORSE_WIDTH = 60; // the width in pixels of the horse icon drawn by HorseIcon
+
+    private final int finishDistance;
+    private final int laneCount;
+    private final int[] startConfidence; // in tenths
+    private final RaceState state;
+    private final RandomGenerator random;
+    private final RaceRecording replay;
+    private RaceRecording recording;
+
+    /**
+     * Constructor for objects of class RaceEngine
+     *
+     * @param finishDistance the number of steps a horse needs to win
+     * @param confidences    the confidence of the horse in each lane (with its
+     *                       accessory already added)
+     * @param raceCount      the number of races held by the engine
+     * @param random         the random number generator used for every move
+     */
+    public RaceEngine(int finishDistance, double[] confidences, int raceCount, RandomGenerator random) {
+        this.finishDistance = finishDistance;
+        this.laneCount = confidences.length;
+        this.startConfidence = new int[laneCount];
+        for (int lane = 0; lane < laneCount; lane++) {
+            this.startConfidence[lane] = Confidence.toTenths(confidences[lane]);
+        }
+        this.state = new RaceState(raceCount, laneCount);
+        this.random = random;
+        this.replay = null;
+        reset();
+    }
+
+    private RaceEngine(RaceRecording replay) {
+        this.finishDistance = replay.getFinishDistance();
+        this.laneCount = replay.getLaneCount();
+        this.startConfidence = new int[laneCount];
+        for (int lane = 0; lane < laneCount; lane++) {
+            this.startConfidence[lane] = replay.getStartConfidenceTenths(lane);
+        }
+        this.state = new RaceState(1, laneCount);
+        this.random = null;
+        this.replay = replay;
+        reset();
+    }
+
+    public RaceEngine(int finishDistance, double[] confidences, RandomGenerator random) {
+        this(finishDistance, confidences, 1, random);
+    }
+
+    public RaceEngine(int finishDistance, double[] confidences) {
+        this(finishDistance, confidences, 1, new SplittableRandom());
+    }
+
+    /**
+     * Creates an engine for a field of horses. Only the confidence of a horse
+     * affects how it races, its breed has no effect and its accessory is
+     * already part of its confidence once Horse.setAccessory has been called.
+     *
+     * @param horses         the horses, one per lane
+     * @param finishDistance the number of steps a horse needs to win
+     * @param random         the random number generator used for every move
+     * @return the engine, ready to run
+     */
+    public static RaceEngine fromHorses(List<Horse> horses, int finishDistance, RandomGenerator random) {
+        double[] confidences = new double[horses.size()];
+        for (int i = 0; i < confidences.length; i++) {
+            confidences[i] = horses.get(i).getConfidence();
+        }
+        return new RaceEngine(finishDistance, confidences, random);
+    }
+
+    /**
+     * Creates an engine that plays back a recorded race. It takes exactly the
+     * same ticks as the original, without drawing any random numbers.
+     *
+     * @param recording the recorded race
+     * @return the engine, ready to run
+     */
+    public static RaceEngine replay(RaceRecording recording) {
+        return new RaceEngine(recording);
+    }
+
+    /**
+     * Works out how many steps a horse needs to win a race in the GUI, where
+     * each step moves the horse 10 pixels and a horse wins when its right edge
+     * reaches the end of the track.
+     *
+     * @param raceLength the length of the track
+     * @param horseWidth the width of a horse icon in pixels
+     * @return the number of steps needed to win
+     */
+    public static int finishDistance(int raceLength, int horseWidth) {
+        return ((raceLength * 10) - horseWidth) / 10;
+    }
+
+    /**
+     * Puts every horse in every race back at the start with its starting
+     * confidence, so the same engine can be used to run more races.
+     */
+    public void reset() {
+        for (int race = 0; race < state.raceCount; race++) {
+            state.reset(race, startConfidence);
+        }
+        if (recording != null) {
+            recording.clear();
+        }
+    }
+
+    /**
+     * Starts recording every move and fall of the first race, which should
+     * not have started yet.
+     *
+     * @param seed the seed of the random number generator, kept with the
+     *             recording
+     * @return the recording, which fills up as the race runs
+     */
+    public RaceRecording startRecording(long seed) {
+        recording = new RaceRecording(seed, finishDistance, startConfidence);
+        return recording;
+    }
+
+    /**
+     * Moves every horse in the first race once and then checks whether the
+     * race is over.
+     *
+     * @return true if the race has finished
+     */
+    public boolean tick() {
+        return tick(0);
+    }
+
+    /**
+     * Moves every horse in a race once and then checks whether the race is
+     * over.
+     *
+     * @param race the race to step
+     * @return true if the race has finished
+     */
+    public boolean tick(int race) {
+        if (state.finished[race]) {
+            return true;
+        }
+        state.ticks[race]++;
+
+        int base = race * laneCount;
+        for (int i = base; i < base + laneCount; i++) {
+            int event = moveHorse(i, state.ticks[race]);
+            if (race == 0 && recording != null) {
+                recording.add(event);
+            }
+        }
+
+        // the first lane (in order) that reached the finish wins, unless a
+        // lane before it finds that every horse is already down
+        for (int i = base; i < base + laneCount; i++) {
+            if (raceWonBy(i)) {
+                state.winner[race] = i - base;
+                state.finished[race] = true;
+                break;
+            } else if (allHorsesHaveFallen(base)) {
+                state.finished[race] = true;
+                break;
+            }
+        }
+        return state.finished[race];
+    }
+
+    /**
+     * Steps every race that has not finished yet once.
+     *
+     * @return true if every race has finished
+     */
+    public boolean tickAll() {
+        boolean allFinished = true;
+        for (int race = 0; race < state.raceCount; race++) {
+            if (!tick(race)) {
+                allFinished = false;
+            }
+        }
+        return allFinished;
+    }
+
+    /**
+     * Runs the first race until a horse wins or every horse has fallen.
+     *
+     * @return the winning lane, or NO_WINNER if every horse fell
+     */
+    public int run() {
+        while (!tick(0)) {
+            // keep going until the race is over
+        }
+        return state.winner[0];
+    }
+
+    // returns what happened to the horse, as RaceRecording events
+    private int moveHorse(int i, int tick) {
+        int event = 0;
+        // a fallen horse cannot move
+        if (!state.fallen[i]) {
+            if (moves(i)) {
+                state.distance[i]++;
+                changeHorseConfidence(i);
+                event |= RaceRecording.MOVED;
+            }
+
+            if (falls(i)) {
+                state.fallen[i] = true;
+                changeHorseConfidence(i);
+                event |= RaceRecording.FELL;
+            }
+
+            if (state.confidence[i] == 0) {
+                state.fallen[i] = true;
+            }
+
+            if (state.fallen[i]) {
+                state.fallTick[i] = tick;
+            }
+        }
+        return event;
+    }
+
+    private boolean moves(int i) {
+        if (replay != null) {
+            return replay.moved(state.ticks[0], i);
+        }
+        return random.nextDouble() < Confidence.toDouble(state.confidence[i]);
+    }
+
+    private boolean falls(int i) {
+        if (replay != null) {
+            return replay.fell(state.ticks[0], i);
+        }
+        return random.nextDouble() < Confidence.fallChance(state.confidence[i]);
+    }
+
+    private void changeHorseConfidence(int i) {
+        if (raceWonBy(i)) {
+            state.confidence[i] = (byte) Confidence.adjust(state.confidence[i], 1);
+        } else if (state.fallen[i]) {
+            state.confidence[i] = (byte) Confidence.adjust(state.confidence[i], -1);
+        }
+    }
+
+    private boolean raceWonBy(int i) {
+        return state.distance[i] == finishDistance;
+    }
+
+    private boolean allHorsesHaveFallen(int base) {
+        for (int i = base; i < base + laneCount; i++) {
+            if (!state.fallen[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public RaceState getState() {
+        return state;
+    }
+
+    public int getLaneCount() {
+        return laneCount;
+    }
+
+    public int getFinishDistance() {
+        return finishDistance;
+    }
+
+    public int getTicks() {
+        return state.ticks[0];
+    }
+
+    public int getWinner() {
+        return state.winner[0];
+    }
+
+    public boolean isFinished() {
+        return state.finished[0];
+    }
+
+    public int getDistance(int lane) {
+        return state.distance[lane];
+    }
+
+    public boolean hasFallen(int lane) {
+        return state.fallen[lane];
+    }
+
+    /**
+     * Returns the tick a horse in the first race fell on.
+     *
+     * @param lane the lane of the horse
+     * @return the tick, or 0 if the horse has not fallen
+     */
+    public int getFallTick(int lane) {
+        return state.fallTick[lane];
+    }
+
+    /**
+     * Returns the tick a horse in the first race reached the finish on.
+     *
+     * @param lane the lane of the horse
+     * @return the tick, or 0 if the horse has not reached the finish
+     */
+    public int getFinishTick(int lane) {
+        // the race ends on the tick the first horse reaches the finish
+        return state.distance[lane] == finishDistance ? state.ticks[0] : 0;
+    }
+
+    public int getStartConfidenceTenths(int lane) {
+        return startConfidence[lane];
+    }
+
+    public double getConfidence(int lane) {
+        return Confidence.toDouble(state.confidence[lane]);
+    }
+
+    public int getConfidenceTenths(int lane) {
+        return state.confidence[lane];
+    }
+}
@@ -0,0 +1,149 @@
+import java.util.List;
+import java.util.concurrent.Flow;
+import java.util.function.Consumer;
+
+/**
+ * Something that happened in a race, as published by a RaceSimulation. The
+ * events of a tick are worked out by comparing its snapshot with the one
+ * before, and are delivered together with the events of any other ticks run
+ * in the same step, as one batch (a List of RaceEvent).
+ *
+ * In each tick the TICK event comes first, then the events of each lane in
+ * lane order, and a FINISHED or ALL_FALLEN event comes last in the tick that
+ * ended the race.
+ *
+ * @author Rahman Imtiaz
+ * @version 1.0
+ */
+
+public final class RaceEvent {
+
+    /**
+     * The kinds of event, and what getLane and getValue give for each.
+     */
+    public enum Type {
+        TICK, // a tick has been run; value is the tick number
+        MOVED, // a horse has moved; value is its new distance
+        FELL, // a horse has fallen
+        CONFIDENCE_CHANGED, // a horse's confidence has changed; value is the new confidence in tenths
+        FINISHED, // a horse has won; lane is the winner
+        ALL_FALLEN // every horse has fallen; lane is RaceEngine.NO_WINNER
+    }
+
+    private final Type type;
+    private final int tick;
+    private final int lane;
+    private final int value;
+
+    private RaceEvent(Type type, int tick, int lane, int value) {
+        this.type = type;
+        this.tick = tick;
+        this.lane = lane;
+        this.value = value;
+    }
+
+    /**
+     * Adds the events that happened between two snapshots, one tick apart.
+     *
+     * @param before the snapshot of the tick before
+     * @param after  the snapshot of the tick
+     * @param events where to add the events
+     */
+    static void between(RaceSnapshot before, RaceSnapshot after, List<RaceEvent> events) {
+        int tick = after.getTick();
+        events.add(new RaceEvent(Type.TICK, tick, RaceEngine.NO_WINNER, tick));
+        for (int lane = 0; lane < after.getLaneCount(); lane++) {
+            if (after.getDistance(lane) != before.getDistance(lane)) {
+                events.add(new RaceEvent(Type.MOVED, tick, lane, after.getDistance(lane)));
+            }
+            if (after.hasFallen(lane) && !before.hasFallen(lane)) {
+                events.add(new RaceEvent(Type.FELL, tick, lane, 0));
+            }
+            if (after.getConfidenceTenths(lane) != before.getConfidenceTenths(lane)) {
+                events.add(new RaceEvent(Type.CONFIDENCE_CHANGED, tick, lane, after.getConfidenceTenths(lane)));
+            }
+        }
+        if (after.isFinished() && !before.isFinished()) {
+            int winner = after.getWinner();
+            Type type = winner == RaceEngine.NO_WINNER ? Type.ALL_FALLEN : Type.FINISHED;
+            events.add(new RaceEvent(type, tick, winner, 0));
+        }
+    }
+
+    /**
+     * Returns a subscriber that hands every event to an action, one at a
+     * time and in order. It asks for one batch at a time, but the simulation
+     * keeps publishing meanwhile, and each subscriber has a buffer of its
+     * own where up to RaceSimulation.EVENT_BUFFER batches can wait behind a
+     * slow action. Once that buffer is full, new batches for this subscriber
+     * are dropped rather than waited for (and counted by
+     * RaceSimulation.getDroppedBatches). The only exception is the batch
+     * that ends the race, which is waited for up to
+     * RaceSimulation.FINAL_EVENTS_WAIT seconds before it is dropped as well.
+     * So an action that must see the result should not rely on this alone;
+     * Race settles the bets itself when the race ends, in case the ledger's
+     * subscriber missed the result.
+     *
+     * @param action what to do with each event, called on one of the
+     *               publisher's threads
+     * @return the subscriber
+     */
+    public static Flow.Subscriber<List<RaceEvent>> subscriber(Consumer<RaceEvent> action) {
+        return new Flow.Subscriber<List<RaceEvent>>() {
+            private Flow.Subscription subscription;
+
+            @Override
+            public void onSubscribe(Flow.Subscription newSubscription) {
+                subscription = newSubscription;
+                subscription.request(1);
+            }
+
+            @Override
+            public void onNext(List<RaceEvent> batch) {
+                for (RaceEvent event : batch) {
+                    action.accept(event);
+                }
+                subscription.request(1);
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                System.err.println("Race events stopped: " + error);
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        };
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public int getTick() {
+        return tick;
+    }
+
+    public int getLane() {
+        return lane;
+    }
+
+    public int getValue() {
+        return value;
+    }
+
+    /**
+     * Returns whether this event ends the race: FINISHED or ALL_FALLEN.
+     *
+     * @return true if it does
+     */
+    public boolean isRaceOver() {
+        return type == Type.FINISHED || type == Type.ALL_FALLEN;
+    }
+
+    @Override
+    public String toString() {
+        return type + " tick " + tick + (lane != RaceEngine.NO_WINNER ? " lane " + lane : "") + " value " + value;
+    }
+}
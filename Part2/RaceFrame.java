@@ -34,13 +34,22 @@ public class RaceFrame extends JFrame {
     private JPanel bettingPanel;
     private JPanel horseListPanel;
     private JComboBox<String> BettingcomboBox;
-
-    public RaceFrame(Color trackColour, int raceLength, int horseNum, List<Horse> horses, User user) {
+    private Image trackImage;
+    private OddsEngine odds;
+    private BettingLedger ledger;
+    private RaceDetails details; // the text last shown in each label
+    private User user;
+
+    public RaceFrame(Color trackColour, int raceLength, int horseNum, List<Horse> horses, User user,
+            BettingLedger ledger) {
         this.trackColour = trackColour;
+        this.ledger = ledger;
         this.raceLength = raceLength;
         this.horseNum = horseNum;
         this.horses = horses;
         this.selectedHorseIndex = 0;
+        this.details = new RaceDetails(horses);
+        this.user = user;
 
         this.setExtendedState(Frame.MAXIMIZED_BOTH);
         this.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
@@ -50,18 +59,7 @@ public class RaceFrame extends JFrame {
 
         for (int i = 0; i < horseNum; i++) {
 
-            horsePanel = new JPanel() {
-                @Override
-                protected void paintComponent(Graphics g) {
-                    super.paintComponent(g);
-                    setBackground(Color.BLACK);
-                    g.setColor(trackColour);
-                    g.fillRect(50, 0, ((raceLength) * 10), 60);
-
-                    g.setColor(Color.WHITE); // Set the color of the border
-                    g.drawRect(50, 0, ((raceLength) * 10), 60);
-                }
-            };
+            horsePanel = new TrackPanel();
             horsePanel.setLayout(null); // Set layout to null
             horsePanel.setSize(horsePanel.getPreferredSize().width, 120);
 
@@ -76,9 +74,7 @@ public class RaceFrame extends JFrame {
                 }
 
                 horseDetails = new JTextArea();
-                horseDetails.setText(
-                        " " + horses.get(i).getName() + "\n(Current confidence "
-                                + horses.get(i).getConfidence() + ")");
+                horseDetails.setText(details.getHorseText(i));
                 horseDetails.setBounds(((raceLength) * 10) + 60, 1, 200, 30);
                 horseDetails.setEditable(false);
                 horseDetails.setForeground(Color.WHITE);
@@ -102,11 +98,45 @@ public class RaceFrame extends JFrame {
         this.setVisible(true);
     }
 
-    public void updateHorseDetails(int i) {
-        JTextArea horseDetails = horseDetailsList.get(i);
-        horseDetails.setText(
-                " " + horses.get(i).getName() + "\n(Current confidence "
-                        + horses.get(i).getConfidence() + ")");
+    /**
+     * A lane of the track. The track itself never changes during a race, so
+     * it is drawn once into an image shared by every lane and copied from
+     * there. Only the areas Swing asks for get repainted, which during a race
+     * are the old and new positions of a horse label that has moved.
+     */
+    private class TrackPanel extends JPanel {
+        private static final long serialVersionUID = 1L;
+
+        TrackPanel() {
+            setBackground(Color.BLACK);
+            setOpaque(true);
+        }
+
+        @Override
+        protected void paintComponent(Graphics g) {
+            // the cached image covers the whole lane, so there is nothing else to fill
+            g.drawImage(getTrackImage(getWidth(), getHeight()), 0, 0, null);
+        }
+    }
+
+    /**
+     * Returns the image of an empty lane, drawing it again only if the lane
+     * size has changed.
+     */
+    private Image getTrackImage(int width, int height) {
+        if (trackImage == null || trackImage.getWidth(null) != width || trackImage.getHeight(null) != height) {
+            trackImage = createImage(Math.max(width, 1), Math.max(height, 1));
+            Graphics g = trackImage.getGraphics();
+            g.setColor(Color.BLACK);
+            g.fillRect(0, 0, width, height);
+            g.setColor(trackColour);
+            g.fillRect(50, 0, ((raceLength) * 10), 60);
+
+            g.setColor(Color.WHITE); // Set the color of the border
+            g.drawRect(50, 0, ((raceLength) * 10), 60);
+            g.dispose();
+        }
+        return trackImage;
     }
 
     public int getHorseWidth() {
@@ -152,8 +182,15 @@ public class RaceFrame extends JFrame {
         oddsLabel.setForeground(Color.WHITE);
         bettingPanel.add(createCenteredBox(oddsLabel));
 
-        double odds = horses.get(0).calculateOdds(raceLength);
-        oddsLabel.setText(String.format("Odds: %.2f", odds));
+        // the odds of every horse, worked out in the background from the confidences
+        // before the race and shown once they are ready
+        odds = null;
+        oddsLabel.setText(oddsText(0));
+        OddsCache.getOdds(horses, RaceEngine.finishDistance(raceLength, horseWidth))
+                .thenAccept(result -> SwingUtilities.invokeLater(() -> {
+                    odds = result;
+                    oddsLabel.setText(oddsText(selectedHorseIndex));
+                }));
         oddsLabel.setForeground(Color.WHITE);
 
         betsLabelList.add(oddsLabel);
@@ -169,11 +206,8 @@ public class RaceFrame extends JFrame {
                 // Get the selected item
                 selectedHorseIndex = BettingcomboBox.getSelectedIndex();
 
-                // Find the Horse object based on the selected index
-                double odds = horses.get(selectedHorseIndex).calculateOdds(raceLength);
-
-                // Display the odds (for example, in a JLabel)
-                oddsLabel.setText(String.format("Odds: %.2f", odds));
+                // Display the odds of the selected horse
+                oddsLabel.setText(oddsText(selectedHorseIndex));
                 oddsLabel.setForeground(Color.WHITE);
 
                 // Refresh the panel
@@ -209,13 +243,17 @@ public class RaceFrame extends JFrame {
                 // Parse the text as an integer
                 try {
                     int betAmount = Integer.parseInt(betAmountText);
+                    int lane = BettingcomboBox.getSelectedIndex();
 
-                    if (betAmount <= user.getBalance()) {
+                    // the stake comes off the balance now, and the bet is paid at today's odds
+                    if (betAmount < 1) {
+                        JOptionPane.showMessageDialog(null, "Please enter a bet of at least 1.");
+                    } else if (ledger.placeBet(user, lane, betAmount, betOdds(lane)) != null) {
                         user.setBetAmount(betAmount);
-                        user.setHorseSelected(BettingcomboBox.getSelectedIndex());
+                        user.setHorseSelected(lane);
 
                         betAmountField.setText("");
-                        betAmountLabel.setText("Bet Amount: " + user.getBetAmount());
+                        updateDetails(user);
                         placeBetBtn.setEnabled(false);
                     } else {
                         JOptionPane.showMessageDialog(null, "You do not have enough balance to place this bet.");
@@ -270,7 +308,7 @@ public class RaceFrame extends JFrame {
                             horse.setConfidence(Double.parseDouble(confidenceField.getText()));
 
                             // Update the horse's details
-                            updateHorseDetails(horses.indexOf(horse));
+                            updateDetails(user);
                             horseButton.setText(horse.getName());
 
                             for (int i = 0; i < BettingcomboBox.getItemCount(); i++) {
@@ -330,17 +368,65 @@ public class RaceFrame extends JFrame {
         return box;
     }
 
-    public void updateStatDetails(User user) {
-        double odds = horses.get(selectedHorseIndex).calculateOdds(raceLength);
+    /**
+     * Returns the odds against a horse winning, and its chance of winning,
+     * ready to show in the odds label.
+     */
+    private String oddsText(int lane) {
+        if (odds == null) {
+            return "Odds: working them out...";
+        }
+        double chance = odds.getWinChance(lane);
+        if (chance <= 0) {
+            return "Odds: no chance of winning";
+        }
+        return String.format("Odds: %.2f to 1 (%.1f%% chance)", odds.getOdds(lane), chance * 100);
+    }
+
+    /**
+     * Returns the odds a bet on a lane is paid at: the odds shown, or even
+     * money if they are not ready yet or the horse has no chance of winning.
+     */
+    private double betOdds(int lane) {
+        if (odds == null || odds.getWinChance(lane) <= 0) {
+            return 1;
+        }
+        return odds.getOdds(lane);
+    }
+
+    /**
+     * Updates the horse details and the betting labels, setting the text of
+     * only those whose values have changed since they were last shown. Called
+     * once per frame, so the work done on the Swing thread depends on how much
+     * has changed rather than on the number of horses.
+     *
+     * @param user the user betting on the race
+     */
+    public void updateDetails(User user) {
+        if (!details.refresh(user, selectedHorseIndex, odds)) {
+            return;
+        }
+
+        // update the horse detail labels
+        for (int i = details.nextChangedHorse(0); i >= 0; i = details.nextChangedHorse(i + 1)) {
+            horseDetailsList.get(i).setText(details.getHorseText(i));
+        }
 
         // update the odds label
-        betsLabelList.get(0).setText(String.format("Odds: %.2f", odds));
+        if (details.isOddsChanged()) {
+            betsLabelList.get(0).setText(oddsText(selectedHorseIndex));
+        }
 
         // update the bet amount label
-        betsLabelList.get(1).setText("Bet Amount: " + user.getBetAmount());
+        if (details.isBetAmountChanged()) {
+            betsLabelList.get(1).setText(details.getBetAmountText());
+        }
 
         // update the balance label
-        betsLabelList.get(2).setText("Balance: £" + user.getBalance());
+        if (details.isBalanceChanged()) {
+            betsLabelList.get(2).setText(details.getBalanceText());
+        }
+        details.markShown();
     }
 
     public void enableBetBtn() {
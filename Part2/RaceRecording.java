@@ -0,0 +1,110 @@
+import java.util.Arrays;
+
+/**
+ * A compact log of one race: the seed it was run with, how it started and,
+ * for every tick, whether each horse moved and whether it fell. Each horse
+ * needs 2 bits per tick, so even a long race with 12 lanes fits in a few
+ * hundred bytes.
+ *
+ * Given to RaceEngine.replay, a recording plays the race back exactly at any
+ * speed without drawing any random numbers.
+ *
+ * @author Rahman Imtiaz
+ * @version 1.0
+ */
+
+public class RaceRecording {
+    public static final int MOVED = 1;
+    public static final int FELL = 2;
+
+    private static final int BITS_PER_EVENT = 2;
+    private static final int EVENTS_PER_BYTE = 8 / BITS_PER_EVENT;
+
+    private final long seed;
+    private final int finishDistance;
+    private final int[] startConfidences; // in tenths
+    private byte[] events;
+    private int eventCount;
+
+    /**
+     * Constructor for objects of class RaceRecording
+     *
+     * @param seed             the seed of the random number generator the race
+     *                         was run with
+     * @param finishDistance   the number of steps a horse needs to win
+     * @param startConfidences the confidence of the horse in each lane at the
+     *                         start, in tenths
+     */
+    public RaceRecording(long seed, int finishDistance, int[] startConfidences) {
+        this.seed = seed;
+        this.finishDistance = finishDistance;
+        this.startConfidences = startConfidences.clone();
+        this.events = new byte[Math.max(16, startConfidences.length * 8)];
+    }
+
+    /**
+     * Adds what happened to the next lane on the current tick. Lanes are
+     * added in order, one tick after another.
+     *
+     * @param event MOVED and/or FELL, or 0 if nothing happened
+     */
+    public void add(int event) {
+        int index = eventCount / EVENTS_PER_BYTE;
+        if (index == events.length) {
+            events = Arrays.copyOf(events, events.length * 2);
+        }
+        events[index] |= (byte) (event << ((eventCount % EVENTS_PER_BYTE) * BITS_PER_EVENT));
+        eventCount++;
+    }
+
+    /**
+     * Forgets every event, so the race can be recorded again from the start.
+     */
+    public void clear() {
+        Arrays.fill(events, (byte) 0);
+        eventCount = 0;
+    }
+
+    /**
+     * Returns what happened to a horse on a tick.
+     *
+     * @param tick the tick, starting from 1
+     * @param lane the lane of the horse
+     * @return MOVED and/or FELL, or 0 if nothing happened
+     */
+    public int getEvent(int tick, int lane) {
+        int n = ((tick - 1) * startConfidences.length) + lane;
+        if (n >= eventCount) {
+            throw new IndexOutOfBoundsException("tick " + tick + " was not recorded");
+        }
+        return (events[n / EVENTS_PER_BYTE] >> ((n % EVENTS_PER_BYTE) * BITS_PER_EVENT)) & (MOVED | FELL);
+    }
+
+    public boolean moved(int tick, int lane) {
+        return (getEvent(tick, lane) & MOVED) != 0;
+    }
+
+    public boolean fell(int tick, int lane) {
+        return (getEvent(tick, lane) & FELL) != 0;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public int getFinishDistance() {
+        return finishDistance;
+    }
+
+    public int getLaneCount() {
+        return startConfidences.length;
+    }
+
+    public int getStartConfidenceTenths(int lane) {
+        return startConfidences[lane];
+    }
+
+    public int getTicks() {
+        return eventCount / startConfidences.length;
+    }
+}
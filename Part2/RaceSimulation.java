@@ -0,0 +1,224 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs a race on a background thread at a fixed rate of one tick every
+ * 100 milliseconds (at normal speed), publishing a RaceSnapshot after every
+ * tick. Drawing the race is left to whoever reads the snapshots, so a slow
+ * repaint never holds up the race, and the speed can be changed at any time.
+ *
+ * If the thread falls behind (for example after a pause) it runs the ticks
+ * it missed straight away, so the race always keeps the same pace overall.
+ *
+ * The race can also be followed as a stream of RaceEvents, through
+ * subscribe. The events of every tick run in one step are sent as one
+ * batch. Each subscriber has its own buffer of EVENT_BUFFER batches, and a
+ * batch that does not fit is dropped for that subscriber (and counted)
+ * instead of holding up the race. The last batch, with the FINISHED or
+ * ALL_FALLEN event, is handed over from another thread that waits up to
+ * FINAL_EVENTS_WAIT seconds for room, so even a slow subscriber gets the
+ * result without the race waiting for it. Subscribers are completed once the
+ * race has finished or been stopped.
+ *
+ * @author Rahman Imtiaz
+ * @version 1.0
+ */
+
+public class RaceSimulation {
+    public static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    public static final double SPEED_INSTANT = Double.POSITIVE_INFINITY;
+    public static final int EVENT_BUFFER = 256; // batches each subscriber can have waiting
+    public static final long FINAL_EVENTS_WAIT = 10; // seconds to wait to deliver the result
+
+    // shared by every simulation, each step only takes a moment
+    private static final ScheduledExecutorService SCHEDULER = Executors.newScheduledThreadPool(
+            Runtime.getRuntime().availableProcessors(), runnable -> {
+                Thread thread = new Thread(runnable, "race-simulation");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    private final RaceEngine engine;
+    private volatile RaceSnapshot snapshot;
+    private double speed = 1;
+    private long lastTickTime;
+    private boolean started;
+    private boolean stopped;
+    private ScheduledFuture<?> nextStep;
+    private int stepCount; // so a step replaced by setSpeed does nothing if it still runs
+    private final SubmissionPublisher<List<RaceEvent>> events = new SubmissionPublisher<>(
+            ForkJoinPool.commonPool(), EVENT_BUFFER);
+    private final AtomicLong droppedBatches = new AtomicLong();
+
+    /**
+     * Constructor for objects of class RaceSimulation
+     *
+     * @param engine the engine holding the race, which should not be used by
+     *               anything else once the simulation has started
+     */
+    public RaceSimulation(RaceEngine engine) {
+        this.engine = engine;
+        this.snapshot = RaceSnapshot.of(engine, null, System.nanoTime(), 0);
+    }
+
+    /**
+     * Starts the race, the first tick happens one tick length from now.
+     */
+    public synchronized void start() {
+        if (started) {
+            return;
+        }
+        started = true;
+        lastTickTime = System.nanoTime();
+        schedule(lastTickTime);
+    }
+
+    /**
+     * Stops the race, no more ticks will happen.
+     */
+    public synchronized void stop() {
+        stopped = true;
+        if (nextStep != null) {
+            nextStep.cancel(false);
+        }
+        if (!engine.isFinished()) {
+            events.close(); // a finished race closes the stream once the result is delivered
+        }
+    }
+
+    /**
+     * Adds a subscriber to the race's events. Subscribers added before start
+     * see every batch; one added later sees the batches from then on.
+     *
+     * @param subscriber the subscriber
+     */
+    public void subscribe(Flow.Subscriber<? super List<RaceEvent>> subscriber) {
+        events.subscribe(subscriber);
+    }
+
+    /**
+     * Returns how many batches of events have been dropped because a
+     * subscriber's buffer was full, counted once for each subscriber that
+     * missed it.
+     *
+     * @return the number of batches dropped
+     */
+    public long getDroppedBatches() {
+        return droppedBatches.get();
+    }
+
+    /**
+     * Changes how fast the race runs, from the next tick onwards.
+     *
+     * @param newSpeed how many times faster than normal, or SPEED_INSTANT to
+     *                 run the rest of the race at once
+     */
+    public synchronized void setSpeed(double newSpeed) {
+        this.speed = newSpeed;
+        if (started && !stopped) {
+            if (nextStep != null) {
+                nextStep.cancel(false);
+            }
+            schedule(System.nanoTime());
+        }
+    }
+
+    public synchronized double getSpeed() {
+        return speed;
+    }
+
+    /**
+     * Returns the snapshot taken after the latest tick. This can be called
+     * from any thread.
+     *
+     * @return the latest snapshot
+     */
+    public RaceSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    public boolean isFinished() {
+        return snapshot.isFinished();
+    }
+
+    /**
+     * Works out how long a number of ticks take at normal speed, so times
+     * are the same however fast the race was shown.
+     *
+     * @param ticks the number of ticks
+     * @return the time in seconds
+     */
+    public static double toSeconds(int ticks) {
+        return ticks * TICK_NANOS / 1e9;
+    }
+
+    private long tickNanos() {
+        return speed == SPEED_INSTANT ? 0 : (long) (TICK_NANOS / speed);
+    }
+
+    private void schedule(long now) {
+        long delay = Math.max(0, (lastTickTime + tickNanos()) - now);
+        int step = ++stepCount;
+        nextStep = SCHEDULER.schedule(() -> step(step), delay, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Runs every tick that is due, publishes a snapshot after each one and
+     * the events of them all as one batch, and then waits for the next.
+     */
+    private synchronized void step(int step) {
+        if (stopped || step != stepCount || engine.isFinished()) {
+            return; // the result has already been published
+        }
+        long now = System.nanoTime();
+        long tickNanos = tickNanos();
+        // the events are only worked out if someone is listening
+        List<RaceEvent> batch = events.hasSubscribers() ? new ArrayList<>() : null;
+        while (!engine.isFinished() && lastTickTime + tickNanos <= now) {
+            engine.tick();
+            lastTickTime += tickNanos;
+            RaceSnapshot before = snapshot;
+            snapshot = RaceSnapshot.of(engine, snapshot, lastTickTime, tickNanos);
+            if (batch != null) {
+                RaceEvent.between(before, snapshot, batch);
+            }
+        }
+
+        if (!engine.isFinished()) {
+            if (batch != null && !batch.isEmpty()) {
+                events.offer(Collections.unmodifiableList(batch), this::dropped);
+            }
+            schedule(now);
+        } else {
+            publishLast(batch == null ? null : Collections.unmodifiableList(batch));
+        }
+    }
+
+    /**
+     * Hands the batch with the result to the subscribers and then completes
+     * them, on another thread so the race never waits for a subscriber.
+     */
+    private void publishLast(List<RaceEvent> batch) {
+        CompletableFuture.runAsync(() -> {
+            if (batch != null) {
+                events.offer(batch, FINAL_EVENTS_WAIT, TimeUnit.SECONDS, this::dropped);
+            }
+            events.close();
+        }, ForkJoinPool.commonPool());
+    }
+
+    private boolean dropped(Flow.Subscriber<? super List<RaceEvent>> subscriber, List<RaceEvent> batch) {
+        droppedBatches.incrementAndGet();
+        return false; // do not try again, the next batch will follow soon enough
+    }
+}
@@ -0,0 +1,105 @@
+/**
+ * An unchangeable copy of a race after one tick, published by a
+ * RaceSimulation for the GUI to draw. It also keeps the distances from the
+ * tick before, so horses can be drawn part way between the two.
+ *
+ * @author Rahman Imtiaz
+ * @version 1.0
+ */
+
+public final class RaceSnapshot {
+    private final int tick;
+    private final int winner;
+    private final boolean finished;
+    private final int[] distances;
+    private final int[] previousDistances;
+    private final boolean[] fallen;
+    private final int[] confidenceTenths;
+    private final long publishedAt;
+    private final long tickNanos;
+
+    private RaceSnapshot(RaceEngine engine, int[] previousDistances, long publishedAt, long tickNanos) {
+        int laneCount = engine.getLaneCount();
+        this.tick = engine.getTicks();
+        this.winner = engine.getWinner();
+        this.finished = engine.isFinished();
+        this.distances = new int[laneCount];
+        this.fallen = new boolean[laneCount];
+        this.confidenceTenths = new int[laneCount];
+        for (int lane = 0; lane < laneCount; lane++) {
+            distances[lane] = engine.getDistance(lane);
+            fallen[lane] = engine.hasFallen(lane);
+            confidenceTenths[lane] = engine.getConfidenceTenths(lane);
+        }
+        this.previousDistances = previousDistances == null ? distances : previousDistances;
+        this.publishedAt = publishedAt;
+        this.tickNanos = tickNanos;
+    }
+
+    /**
+     * Takes a snapshot of the first race of an engine.
+     *
+     * @param engine    the engine
+     * @param previous  the snapshot taken on the tick before, or null
+     * @param now       the System.nanoTime() the snapshot is taken at
+     * @param tickNanos how long until the next tick is due
+     * @return the snapshot
+     */
+    public static RaceSnapshot of(RaceEngine engine, RaceSnapshot previous, long now, long tickNanos) {
+        return new RaceSnapshot(engine, previous == null ? null : previous.distances, now, tickNanos);
+    }
+
+    public int getTick() {
+        return tick;
+    }
+
+    public int getWinner() {
+        return winner;
+    }
+
+    public boolean isFinished() {
+        return finished;
+    }
+
+    public int getLaneCount() {
+        return distances.length;
+    }
+
+    public int getDistance(int lane) {
+        return distances[lane];
+    }
+
+    public boolean hasFallen(int lane) {
+        return fallen[lane];
+    }
+
+    public int getConfidenceTenths(int lane) {
+        return confidenceTenths[lane];
+    }
+
+    /**
+     * Works out how far between the previous tick and this one the race
+     * should be drawn at a given time.
+     *
+     * @param now the System.nanoTime() of the frame being drawn
+     * @return 0 for the previous tick, up to 1 for this tick
+     */
+    public double getProgress(long now) {
+        if (tickNanos <= 0) {
+            return 1;
+        }
+        return Math.max(0, Math.min(1, (double) (now - publishedAt) / tickNanos));
+    }
+
+    /**
+     * Returns a horse's distance part way between the previous tick and this
+     * one.
+     *
+     * @param lane     the lane of the horse
+     * @param progress how far between the two ticks, from getProgress
+     * @return the distance in steps
+     */
+    public double getDistance(int lane, double progress) {
+        return previousDistances[lane] + ((distances[lane] - previousDistances[lane]) * progress);
+    }
+}
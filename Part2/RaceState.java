@@ -0,0 +1,106 @@
+/**
+ * The state of one or more races kept as parallel primitive arrays instead of
+ * Horse objects. Lane l of race r is stored at index (r * laneCount) + l of
+ * the per-lane arrays, so a block of races needs no objects apart from the
+ * arrays themselves and stepping a race never allocates.
+ *
+ * The fields are package-private so RaceEngine can loop over the arrays
+ * directly.
+ *
+ * @author Rahman Imtiaz
+ * @version 1.0
+ */
+
+public class RaceState {
+    final int raceCount;
+    final int laneCount;
+
+    // one entry per lane of every race
+    final int[] distance;
+    final boolean[] fallen;
+    final byte[] confidence; // in tenths, see Confidence
+    final int[] fallTick; // the tick a horse fell on, 0 if it has not
+
+    // one entry per race
+    final int[] ticks;
+    final int[] winner;
+    final boolean[] finished;
+
+    /**
+     * Constructor for objects of class RaceState
+     *
+     * @param raceCount the number of races held
+     * @param laneCount the number of lanes in each race
+     */
+    public RaceState(int raceCount, int laneCount) {
+        this.raceCount = raceCount;
+        this.laneCount = laneCount;
+        this.distance = new int[raceCount * laneCount];
+        this.fallen = new boolean[raceCount * laneCount];
+        this.confidence = new byte[raceCount * laneCount];
+        this.fallTick = new int[raceCount * laneCount];
+        this.ticks = new int[raceCount];
+        this.winner = new int[raceCount];
+        this.finished = new boolean[raceCount];
+    }
+
+    /**
+     * Puts every horse in a race back at the start.
+     *
+     * @param race             the race to reset
+     * @param startConfidences the confidence of the horse in each lane, in
+     *                         tenths
+     */
+    public void reset(int race, int[] startConfidences) {
+        int base = race * laneCount;
+        for (int lane = 0; lane < laneCount; lane++) {
+            distance[base + lane] = 0;
+            fallen[base + lane] = false;
+            confidence[base + lane] = (byte) startConfidences[lane];
+            fallTick[base + lane] = 0;
+        }
+        ticks[race] = 0;
+        winner[race] = RaceEngine.NO_WINNER;
+        finished[race] = false;
+    }
+
+    public int getRaceCount() {
+        return raceCount;
+    }
+
+    public int getLaneCount() {
+        return laneCount;
+    }
+
+    public int getDistance(int race, int lane) {
+        return distance[(race * laneCount) + lane];
+    }
+
+    public boolean hasFallen(int race, int lane) {
+        return fallen[(race * laneCount) + lane];
+    }
+
+    public int getFallTick(int race, int lane) {
+        return fallTick[(race * laneCount) + lane];
+    }
+
+    public double getConfidence(int race, int lane) {
+        return Confidence.toDouble(confidence[(race * laneCount) + lane]);
+    }
+
+    public int getConfidenceTenths(int race, int lane) {
+        return confidence[(race * laneCount) + lane];
+    }
+
+    public int getTicks(int race) {
+        return ticks[race];
+    }
+
+    public int getWinner(int race) {
+        return winner[race];
+    }
+
+    public boolean isFinished(int race) {
+        return finished[race];
+    }
+}
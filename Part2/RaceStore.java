@@ -0,0 +1,377 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps every race result and the user's balance in a file, so horse stats
+ * and the balance survive the program being closed.
+ *
+ * The file is append-only. After a short header it is a list of records,
+ * each starting with its type:
+ * <ul>
+ * <li>NAME: a horse name, given a number the first time it is raced;</li>
+ * <li>RACE: the time it ended, the finishing time, the winner and, for each
+ * lane, the horse's name number, confidence, whether it fell and how far it
+ * ran;</li>
+ * <li>BALANCE: the user's balance after a bet was settled.</li>
+ * </ul>
+ * A race with 12 lanes takes 115 bytes. When the store is opened the file is
+ * read through memory-mapped buffers and every race is replayed into one
+ * Horse per name, so loading millions of races takes a fraction of a second.
+ * A record cut short (if the program was stopped while writing) is dropped.
+ * The file is cut back to the last whole record, or where that is not
+ * allowed because parts of the file are still mapped (on Windows) the extra
+ * bytes are blanked, which reads as the end of the records, and the next
+ * record is written over them.
+ *
+ * New records are written by a background thread, so saving a race never
+ * holds up the race or the GUI.
+ *
+ * @author Rahman Imtiaz
+ * @version 1.0
+ */
+
+public class RaceStore {
+    private static final int MAGIC = 0x48525331; // "HRS1"
+    private static final short VERSION = 1;
+    private static final int HEADER_SIZE = 6;
+
+    private static final byte END = 0; // blank bytes after the last record
+    private static final byte NAME = 1;
+    private static final byte RACE = 2;
+    private static final byte BALANCE = 3;
+
+    private static final int RACE_SIZE = 1 + 8 + 8 + 1 + 1; // type, time, finishing time, lanes, winner
+    private static final int LANE_SIZE = 2 + 1 + 1 + 4; // name, confidence, fallen, distance
+    private static final long MAX_MAPPING = 1 << 30; // map at most 1GB of the file at a time
+    private static final int MAX_NAME_ID = 0xFFFF; // name numbers and lengths are kept in two bytes
+
+    private final Path path;
+    private final FileChannel channel;
+    private final ExecutorService writer;
+    private final Map<String, Integer> nameIds = new HashMap<>();
+    private final List<Horse> horses = new ArrayList<>(); // stats loaded from the file, one per name id
+    private long raceCount;
+    private boolean hasBalance;
+    private int balance;
+
+    private RaceStore(Path path, FileChannel channel) {
+        this.path = path;
+        this.channel = channel;
+        this.writer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "race-store");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Opens a store, creating the file if it does not exist, and loads
+     * everything saved in it.
+     *
+     * @param path the file
+     * @return the store
+     * @throws IOException if the file cannot be read, is not a race store or
+     *                     is damaged
+     */
+    public static RaceStore open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        RaceStore store = new RaceStore(path, channel);
+        try {
+            store.load();
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        } catch (RuntimeException e) {
+            // anything else wrong with the file is reported the same way
+            channel.close();
+            throw new IOException(path + " could not be read: " + e, e);
+        }
+
+        // finish any writes that are still waiting when the program is closed
+        Runtime.getRuntime().addShutdownHook(new Thread(store::close, "race-store-close"));
+        return store;
+    }
+
+    private void load() throws IOException {
+        long size = channel.size();
+        if (size < HEADER_SIZE) {
+            // a new file, or one cut short before its header was written
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putShort(VERSION);
+            header.flip();
+            channel.truncate(0);
+            channel.write(header, 0);
+            channel.position(HEADER_SIZE);
+            return;
+        }
+
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+        if (buffer.getInt() != MAGIC || buffer.getShort() != VERSION) {
+            throw new IOException(path + " is not a race store");
+        }
+
+        // read the records a mapping at a time, remapping from the record that
+        // did not fit whenever the end of a mapping is reached
+        long offset = HEADER_SIZE;
+        while (offset < size) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(size - offset, MAX_MAPPING));
+            int read = readRecords(buffer, offset);
+            if (read == 0) {
+                break; // the rest of the file is a record that was cut short
+            }
+            offset += read;
+        }
+
+        // anything after the last whole record is dropped so new records follow on
+        // from it. Cutting the file shorter fails on Windows while the mappings
+        // have not been garbage collected, so then it is blanked instead
+        if (offset < size) {
+            buffer = null;
+            try {
+                channel.truncate(offset);
+            } catch (IOException e) {
+                blank(offset, size);
+            }
+        }
+        channel.position(offset);
+    }
+
+    // fills part of the file with END bytes
+    private void blank(long from, long to) throws IOException {
+        ByteBuffer zeros = ByteBuffer.allocate((int) Math.min(to - from, 64 * 1024));
+        long position = from;
+        while (position < to) {
+            zeros.clear().limit((int) Math.min(zeros.capacity(), to - position));
+            position += channel.write(zeros, position);
+        }
+    }
+
+    // reads every whole record in the buffer and returns the number of bytes they took
+    private int readRecords(ByteBuffer buffer, long offset) throws IOException {
+        int end = 0;
+        while (buffer.hasRemaining()) {
+            byte type = buffer.get();
+            if (type == END) {
+                break;
+            } else if (type == NAME) {
+                if (buffer.remaining() < 4) {
+                    break;
+                }
+                int id = Short.toUnsignedInt(buffer.getShort());
+                int length = Short.toUnsignedInt(buffer.getShort());
+                if (buffer.remaining() < length) {
+                    break;
+                }
+                byte[] bytes = new byte[length];
+                buffer.get(bytes);
+                addName(id, new String(bytes, StandardCharsets.UTF_8));
+            } else if (type == RACE) {
+                if (buffer.remaining() < RACE_SIZE - 1) {
+                    break;
+                }
+                buffer.getLong(); // when the race ended, not needed for the stats
+                double finishingTime = buffer.getDouble();
+                int lanes = buffer.get();
+                int winner = buffer.get();
+                if (lanes < 0) {
+                    throw new IOException(path + " has a race with " + lanes + " lanes at byte " + (offset + end));
+                }
+                if (buffer.remaining() < lanes * LANE_SIZE) {
+                    break;
+                }
+                for (int lane = 0; lane < lanes; lane++) {
+                    int id = Short.toUnsignedInt(buffer.getShort());
+                    Horse horse = id < horses.size() ? horses.get(id) : null;
+                    if (horse == null) {
+                        throw new IOException(path + " has a race with an unknown horse id " + id + " at byte "
+                                + (offset + end));
+                    }
+                    buffer.get(); // the confidence, kept for the race results
+                    buffer.get(); // whether it fell, as above
+                    addRace(horse, buffer.getInt(), lane == winner, finishingTime);
+                }
+                raceCount++;
+            } else if (type == BALANCE) {
+                if (buffer.remaining() < 4) {
+                    break;
+                }
+                balance = buffer.getInt();
+                hasBalance = true;
+            } else {
+                throw new IOException(path + " has an unknown record at byte " + (offset + end));
+            }
+            end = buffer.position();
+        }
+        return end;
+    }
+
+    // updates a horse's stats the same way Race does at the end of a race
+    private static void addRace(Horse horse, int distance, boolean won, double finishingTime) {
+        horse.setDistanceTravelled(distance);
+        if (won) {
+            horse.updatePerformanceMetrics(finishingTime, 1);
+        } else {
+            horse.updatePerformanceMetricsLoss(finishingTime);
+        }
+    }
+
+    private void addName(int id, String name) {
+        while (horses.size() <= id) {
+            horses.add(null);
+        }
+        Horse horse = new Horse();
+        horse.setName(name);
+        horses.set(id, horse);
+        nameIds.put(name, id);
+    }
+
+    /**
+     * Gives a horse the stats saved for every earlier horse with the same
+     * name. A horse with a new name is left as it is.
+     *
+     * @param horse the horse
+     */
+    public synchronized void restore(Horse horse) {
+        Integer id = nameIds.get(horse.getName());
+        if (id != null) {
+            horse.copyPerformanceMetrics(horses.get(id));
+        }
+    }
+
+    /**
+     * Returns the balance saved most recently.
+     *
+     * @param otherwise the balance to use if none has been saved
+     * @return the balance
+     */
+    public synchronized int getBalance(int otherwise) {
+        return hasBalance ? balance : otherwise;
+    }
+
+    public synchronized long getRaceCount() {
+        return raceCount;
+    }
+
+    /**
+     * Saves the result of a race in the background. Call this once the
+     * horses' performance metrics have been updated.
+     *
+     * @param field         the horses, one per lane
+     * @param winner        the winning lane, or RaceEngine.NO_WINNER
+     * @param finishingTime the finishing time of the race in seconds
+     * @throws IllegalStateException    if the file already has the most horse
+     *                                  names it can hold, 65,536
+     * @throws IllegalArgumentException if a name is longer than 65,535 bytes
+     *                                  in UTF-8
+     */
+    public synchronized void appendRace(List<Horse> field, int winner, double finishingTime) {
+        // number any new names first, without adding them, so a race that cannot
+        // be saved changes nothing
+        Map<String, Integer> newIds = new LinkedHashMap<>();
+        short[] ids = new short[field.size()];
+        for (int lane = 0; lane < field.size(); lane++) {
+            String name = field.get(lane).getName();
+            Integer id = nameIds.get(name);
+            if (id == null) {
+                id = newIds.get(name);
+            }
+            if (id == null) {
+                id = nameIds.size() + newIds.size();
+                if (id > MAX_NAME_ID) {
+                    throw new IllegalStateException(
+                            "cannot save " + name + ", " + path + " already has " + (MAX_NAME_ID + 1) + " horse names");
+                }
+                if (name.getBytes(StandardCharsets.UTF_8).length > MAX_NAME_ID) {
+                    throw new IllegalArgumentException("cannot save a horse name longer than " + MAX_NAME_ID + " bytes");
+                }
+                newIds.put(name, id);
+            }
+            ids[lane] = (short) (int) id; // read back unsigned, so ids up to MAX_NAME_ID fit
+        }
+
+        List<byte[]> names = new ArrayList<>();
+        for (Map.Entry<String, Integer> name : newIds.entrySet()) {
+            addName(name.getValue(), name.getKey());
+            names.add(nameRecord(name.getValue(), name.getKey()));
+        }
+
+        ByteBuffer race = ByteBuffer.allocate(RACE_SIZE + (field.size() * LANE_SIZE));
+        race.put(RACE).putLong(System.currentTimeMillis()).putDouble(finishingTime);
+        race.put((byte) field.size()).put((byte) winner);
+        for (int lane = 0; lane < field.size(); lane++) {
+            Horse horse = field.get(lane);
+            race.putShort(ids[lane]).put((byte) horse.getConfidenceTenths()).put((byte) (horse.hasFallen() ? 1 : 0));
+            race.putInt(horse.getDistanceTravelled());
+
+            // keep the loaded stats up to date for horses restored later on
+            addRace(horses.get(Short.toUnsignedInt(ids[lane])), horse.getDistanceTravelled(), lane == winner,
+                    finishingTime);
+        }
+        raceCount++;
+
+        for (byte[] name : names) {
+            write(ByteBuffer.wrap(name));
+        }
+        race.flip();
+        write(race);
+    }
+
+    /**
+     * Saves the user's balance in the background.
+     *
+     * @param newBalance the balance
+     */
+    public synchronized void appendBalance(int newBalance) {
+        balance = newBalance;
+        hasBalance = true;
+        ByteBuffer record = ByteBuffer.allocate(5).put(BALANCE).putInt(newBalance);
+        record.flip();
+        write(record);
+    }
+
+    private static byte[] nameRecord(int id, String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        return ByteBuffer.allocate(5 + bytes.length).put(NAME).putShort((short) id).putShort((short) bytes.length)
+                .put(bytes).array();
+    }
+
+    private void write(ByteBuffer record) {
+        writer.execute(() -> {
+            try {
+                while (record.hasRemaining()) {
+                    channel.write(record);
+                }
+            } catch (IOException e) {
+                System.err.println("Could not save to " + path + ": " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Waits for every record still being written and closes the file.
+     */
+    public void close() {
+        writer.shutdown();
+        try {
+            writer.awaitTermination(5, TimeUnit.SECONDS);
+            channel.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            System.err.println("Could not close " + path + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,197 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes the outcome of races to a file, one record per race, as CSV or JSON
+ * Lines, optionally gzipped. Each record has the number of ticks, the winner
+ * and, for every horse, the tick it reached the finish, the tick it fell and
+ * how its confidence changed (as tick:confidence pairs, starting at tick 0).
+ *
+ * Races are added through a Chunk, one per thread. A chunk turns its races
+ * into text (and compresses them, each chunk being a gzip member of its own)
+ * on the thread that ran them, and only hands the finished bytes to the
+ * file. So the threads of a batch simulation share the encoding work, and
+ * the only part they take turns at is one large write per chunk.
+ *
+ * @author Rahman Imtiaz
+ * @version 1.0
+ */
+
+public class ResultsExporter implements AutoCloseable {
+    private static final int CHUNK_SIZE = 256 * 1024; // text collected before a chunk is written
+
+    /**
+     * The formats a file can be written in.
+     */
+    public enum Format {
+        CSV, JSON_LINES
+    }
+
+    private final FileChannel channel;
+    private final Format format;
+    private final boolean gzip;
+    private final AtomicLong nextRace = new AtomicLong(1);
+
+    /**
+     * Constructor for objects of class ResultsExporter, which creates the
+     * file (replacing any file already there) and writes the CSV header.
+     *
+     * @param path      the file to write to
+     * @param format    CSV or JSON Lines
+     * @param gzip      whether to gzip the file
+     * @param laneCount the number of lanes in each race, for the CSV header
+     * @throws IOException if the file cannot be created
+     */
+    public ResultsExporter(Path path, Format format, boolean gzip, int laneCount) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        this.format = format;
+        this.gzip = gzip;
+
+        if (format == Format.CSV) {
+            StringBuilder header = new StringBuilder("race,ticks,winner");
+            for (int lane = 0; lane < laneCount; lane++) {
+                header.append(",finish_tick_").append(lane).append(",fall_tick_").append(lane).append(",confidence_")
+                        .append(lane);
+            }
+            write(encode(header.append('\n')));
+        }
+    }
+
+    /**
+     * Creates a chunk for one thread to add races to.
+     *
+     * @return the chunk
+     */
+    public Chunk newChunk() {
+        return new Chunk();
+    }
+
+    private byte[] encode(CharSequence text) throws IOException {
+        byte[] bytes = text.toString().getBytes(StandardCharsets.US_ASCII);
+        if (!gzip) {
+            return bytes;
+        }
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(bytes.length / 4);
+        try (GZIPOutputStream out = new GZIPOutputStream(compressed, 64 * 1024)) {
+            out.write(bytes);
+        }
+        return compressed.toByteArray();
+    }
+
+    private synchronized void write(byte[] bytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Closes the file. Every chunk should have been closed first.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Races added by one thread, written to the file whenever enough have
+     * been collected and when the chunk is closed.
+     */
+    public class Chunk implements AutoCloseable {
+        private final StringBuilder text = new StringBuilder(CHUNK_SIZE + 1024);
+
+        private Chunk() {
+        }
+
+        /**
+         * Adds the first race of an engine, which should have finished.
+         *
+         * @param engine the engine
+         * @throws IOException if the chunk is full and cannot be written
+         */
+        public void add(RaceEngine engine) throws IOException {
+            long race = nextRace.getAndIncrement();
+            if (format == Format.CSV) {
+                appendCsv(race, engine);
+            } else {
+                appendJson(race, engine);
+            }
+            if (text.length() >= CHUNK_SIZE) {
+                flush();
+            }
+        }
+
+        private void appendCsv(long race, RaceEngine engine) {
+            text.append(race).append(',').append(engine.getTicks()).append(',').append(engine.getWinner());
+            for (int lane = 0; lane < engine.getLaneCount(); lane++) {
+                text.append(',').append(engine.getFinishTick(lane)).append(',').append(engine.getFallTick(lane))
+                        .append(',');
+                appendConfidences(engine, lane, ':', " ");
+            }
+            text.append('\n');
+        }
+
+        private void appendJson(long race, RaceEngine engine) {
+            text.append("{\"race\":").append(race).append(",\"ticks\":").append(engine.getTicks())
+                    .append(",\"winner\":").append(engine.getWinner()).append(",\"horses\":[");
+            for (int lane = 0; lane < engine.getLaneCount(); lane++) {
+                if (lane > 0) {
+                    text.append(',');
+                }
+                text.append("{\"lane\":").append(lane).append(",\"finishTick\":").append(engine.getFinishTick(lane))
+                        .append(",\"fallTick\":").append(engine.getFallTick(lane)).append(",\"confidence\":[[");
+                appendConfidences(engine, lane, ',', "],[");
+                text.append("]]}");
+            }
+            text.append("]}\n");
+        }
+
+        // A horse's confidence only changes on the tick it falls or reaches the
+        // finish, and that tick ends its race. It can change twice in that tick: a
+        // horse that reaches the finish and falls straight away is counted as
+        // finishing both times, so goes up by 0.2 (less if that passes 1.0). The
+        // file has one confidence per tick, the one at the end of it, so the start
+        // confidence and the confidence after that tick are all there is to record
+        private void appendConfidences(RaceEngine engine, int lane, char between, CharSequence separator) {
+            int start = engine.getStartConfidenceTenths(lane);
+            int end = engine.getConfidenceTenths(lane);
+            text.append('0').append(between);
+            appendTenths(start);
+            if (end != start) {
+                int tick = Math.max(engine.getFallTick(lane), engine.getFinishTick(lane));
+                text.append(separator).append(tick).append(between);
+                appendTenths(end);
+            }
+        }
+
+        private void appendTenths(int tenths) {
+            text.append(tenths / 10).append('.').append(tenths % 10);
+        }
+
+        /**
+         * Writes the races collected so far to the file.
+         *
+         * @throws IOException if they cannot be written
+         */
+        public void flush() throws IOException {
+            if (text.length() > 0) {
+                byte[] bytes = encode(text);
+                text.setLength(0);
+                write(bytes);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+}
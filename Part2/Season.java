@@ -0,0 +1,466 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.SplittableRandom;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * A season of races for a large pool of horses: heats, then as many rounds
+ * as it takes for the field to fit in one race, ending with the semi-finals
+ * and the final. The best horses from each race go through to the next
+ * round, dealt out across its races so the winners of one round do not all
+ * meet straight away.
+ *
+ * The races of a round do not depend on each other, so they are all run at
+ * once on a worker pool. A round starts as soon as the last race of the round
+ * before has finished. Each race updates its horses in the same way Race does
+ * (confidence, distance and performance metrics), so a horse carries its
+ * form from one round into the next.
+ *
+ * The standings are kept sorted as races finish, so each race only moves its
+ * own horses in the table, and a listener is told about each race with the
+ * new standings of its horses rather than the whole table.
+ *
+ * Every race gets its own SplittableRandom, split from the season's in the
+ * order the races are drawn up, so the same seed always gives the same season
+ * however the races are spread over the threads.
+ *
+ * Usage: java Season [horses] [lanes] [race length] [seed]
+ *
+ * @author Rahman Imtiaz
+ * @version 1.0
+ */
+
+public class Season {
+    // best first: the horses that got furthest, then by how they did in their
+    // last race (so the final decides the top places), then by points and wins
+    private static final Comparator<Standing> TABLE_ORDER = Comparator.comparingInt(Standing::getRound).reversed()
+            .thenComparing(Comparator.comparingInt(Standing::getLastPoints).reversed())
+            .thenComparing(Comparator.comparingInt(Standing::getPoints).reversed())
+            .thenComparing(Comparator.comparingInt(Standing::getWins).reversed())
+            .thenComparingInt(standing -> standing.id);
+
+    /**
+     * Told about the season as it goes. Calls are made one at a time, on the
+     * thread that ran the race, so they should be quick; a GUI should hand
+     * the standings to the Swing thread with SwingUtilities.invokeLater.
+     */
+    public interface Listener {
+        /**
+         * Called when a race has finished. The whole table can be read with
+         * getStandings or getLeaders.
+         *
+         * @param heat    the result of the race
+         * @param updated the new standings of the horses in the race, in the
+         *                order they finished
+         */
+        void heatFinished(Heat heat, List<Standing> updated);
+
+        /**
+         * Called once the final has finished.
+         *
+         * @param standings every horse in the pool, best first
+         */
+        default void seasonFinished(List<Standing> standings) {
+        }
+    }
+
+    private final List<Horse> pool;
+    private final int laneCount;
+    private final int finishDistance;
+    private final int qualifiers;
+    private final Executor executor;
+    private final List<Integer> roundSizes = new ArrayList<>(); // horses in each round
+    private final Map<Horse, Standing> standings = new IdentityHashMap<>();
+    private final NavigableSet<Standing> table = new TreeSet<>(TABLE_ORDER);
+    private Listener listener;
+    private boolean started;
+
+    /**
+     * Constructor for objects of class Season
+     *
+     * @param pool           the horses, which are updated as they race
+     * @param laneCount      the most horses in one race
+     * @param finishDistance the number of steps a horse needs to win
+     * @param qualifiers     the horses from each race that go through to the
+     *                       next round, at most half the lanes
+     * @param executor       the pool the races are run on
+     */
+    public Season(List<Horse> pool, int laneCount, int finishDistance, int qualifiers, Executor executor) {
+        if (laneCount < 2) {
+            throw new IllegalArgumentException("a race needs at least 2 lanes");
+        }
+        if (qualifiers < 1 || qualifiers > laneCount / 2) {
+            throw new IllegalArgumentException("qualifiers must be from 1 to half the lanes");
+        }
+        if (pool.size() < 2) {
+            throw new IllegalArgumentException("a season needs at least 2 horses");
+        }
+        this.pool = new ArrayList<>(pool);
+        this.laneCount = laneCount;
+        this.finishDistance = finishDistance;
+        this.qualifiers = qualifiers;
+        this.executor = executor;
+
+        // with at most half of each race going through, every round is smaller
+        // than the one before until the field fits in one race
+        int horses = pool.size();
+        roundSizes.add(horses);
+        while (horses > laneCount) {
+            horses = raceCount(horses) * qualifiers;
+            roundSizes.add(horses);
+        }
+        for (int i = 0; i < this.pool.size(); i++) {
+            Standing standing = new Standing(i, this.pool.get(i).getName(), 0, 0, 0, 0, 0);
+            standings.put(this.pool.get(i), standing);
+            table.add(standing);
+        }
+    }
+
+    public Season(List<Horse> pool, int laneCount, int finishDistance) {
+        this(pool, laneCount, finishDistance, laneCount / 2, ForkJoinPool.commonPool());
+    }
+
+    public static void main(String[] args) {
+        int horseCount = args.length > 0 ? Integer.parseInt(args[0]) : 300;
+        int lanes = args.length > 1 ? Integer.parseInt(args[1]) : 12;
+        int raceLength = args.length > 2 ? Integer.parseInt(args[2]) : 50;
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : System.nanoTime();
+
+        SplittableRandom random = new SplittableRandom(seed);
+        List<Horse> horses = new ArrayList<>();
+        for (int i = 1; i <= horseCount; i++) {
+            Horse horse = new Horse();
+            horse.setName("Horse " + i);
+            horse.setConfidence(0.1 + (random.nextInt(9) / 10.0));
+            horses.add(horse);
+        }
+
+        Season season = new Season(horses, lanes, RaceEngine.finishDistance(raceLength, RaceEngine.HORSE_WIDTH));
+        System.out.println("Season of " + horseCount + " horses, seed " + seed);
+        season.start(random.nextLong(), new Listener() {
+            @Override
+            public void heatFinished(Heat heat, List<Standing> updated) {
+                System.out.println(heat);
+            }
+        }).join();
+
+        System.out.println();
+        List<Standing> leaders = season.getLeaders(10);
+        for (int i = 0; i < leaders.size(); i++) {
+            System.out.println((i + 1) + ". " + leaders.get(i));
+        }
+    }
+
+    /**
+     * Returns the number of rounds, the final included.
+     *
+     * @return the number of rounds
+     */
+    public int getRoundCount() {
+        return roundSizes.size();
+    }
+
+    /**
+     * Returns the name of a round: "Heats", "Round 2" and so on, then
+     * "Semi-finals" and "Final".
+     *
+     * @param round the round, starting at 1
+     * @return the name
+     */
+    public String getRoundName(int round) {
+        int rounds = getRoundCount();
+        if (round == rounds) {
+            return "Final";
+        } else if (round == rounds - 1) {
+            return "Semi-finals";
+        } else if (round == 1) {
+            return "Heats";
+        }
+        return "Round " + round;
+    }
+
+    /**
+     * Starts the season. The races run in the background and this returns
+     * straight away. A season can only be run once.
+     *
+     * @param seed     the seed the random number generators are split from
+     * @param listener told about each race as it finishes, or null
+     * @return the final standings, once the final has finished
+     */
+    public synchronized CompletableFuture<List<Standing>> start(long seed, Listener listener) {
+        if (started) {
+            throw new IllegalStateException("the season has already been run");
+        }
+        started = true;
+        this.listener = listener;
+
+        SplittableRandom random = new SplittableRandom(seed);
+        List<Horse> entrants = new ArrayList<>(pool);
+        // draw the heats at random
+        for (int i = entrants.size() - 1; i > 0; i--) {
+            Collections.swap(entrants, i, random.nextInt(i + 1));
+        }
+        return runRound(1, entrants, random).thenApply(winners -> {
+            List<Standing> finalTable = getStandings();
+            if (listener != null) {
+                listener.seasonFinished(finalTable);
+            }
+            return finalTable;
+        });
+    }
+
+    // runs every race of a round at once, then the next round with the horses that went through
+    private CompletableFuture<List<Horse>> runRound(int round, List<Horse> entrants, SplittableRandom random) {
+        int races = raceCount(entrants.size());
+        List<List<Horse>> fields = new ArrayList<>();
+        for (int i = 0; i < races; i++) {
+            fields.add(new ArrayList<>());
+        }
+        for (int i = 0; i < entrants.size(); i++) {
+            fields.get(i % races).add(entrants.get(i));
+        }
+
+        List<CompletableFuture<List<Horse>>> heats = new ArrayList<>();
+        for (int i = 0; i < races; i++) {
+            List<Horse> field = fields.get(i);
+            int number = i + 1;
+            SplittableRandom heatRandom = random.split();
+            heats.add(CompletableFuture.supplyAsync(() -> runHeat(round, number, field, heatRandom), executor));
+        }
+
+        return CompletableFuture.allOf(heats.toArray(new CompletableFuture<?>[0])).thenCompose(done -> {
+            if (round == getRoundCount()) {
+                return heats.get(0);
+            }
+            // deal the qualifiers out best first: every winner, then every second place...
+            List<Horse> next = new ArrayList<>();
+            for (int place = 0; place < qualifiers; place++) {
+                for (CompletableFuture<List<Horse>> heat : heats) {
+                    List<Horse> placings = heat.join();
+                    if (place < placings.size()) {
+                        next.add(placings.get(place));
+                    }
+                }
+            }
+            return runRound(round + 1, next, random);
+        });
+    }
+
+    // runs one race and returns its horses in the order they finished
+    private List<Horse> runHeat(int round, int number, List<Horse> field, SplittableRandom random) {
+        RaceEngine engine = RaceEngine.fromHorses(field, finishDistance, random);
+        engine.run();
+
+        int winner = engine.getWinner();
+        double finishingTime = RaceSimulation.toSeconds(engine.getTicks());
+        for (int lane = 0; lane < field.size(); lane++) {
+            Horse horse = field.get(lane);
+            horse.setDistanceTravelled(engine.getDistance(lane) * 10);
+            horse.setConfidenceTenths(engine.getConfidenceTenths(lane));
+            if (lane == winner) {
+                horse.updatePerformanceMetrics(finishingTime, 1);
+            } else {
+                horse.updatePerformanceMetricsLoss(finishingTime);
+            }
+            horse.finalisePerformanceMetrics();
+        }
+
+        // the winner, then the horses still standing, then the ones that fell, furthest first
+        List<Integer> lanes = new ArrayList<>();
+        for (int lane = 0; lane < field.size(); lane++) {
+            lanes.add(lane);
+        }
+        lanes.sort(Comparator.comparing((Integer lane) -> lane != winner)
+                .thenComparing(lane -> engine.hasFallen(lane))
+                .thenComparing(lane -> -engine.getDistance(lane)));
+        List<Horse> placings = new ArrayList<>();
+        for (int lane : lanes) {
+            placings.add(field.get(lane));
+        }
+
+        List<String> names = new ArrayList<>();
+        for (Horse horse : placings) {
+            names.add(horse.getName());
+        }
+        Heat heat = new Heat(getRoundName(round), number, names, winner != RaceEngine.NO_WINNER,
+                engine.getTicks());
+        record(round, heat, placings);
+        return placings;
+    }
+
+    // adds a race to the standings, moving only its horses in the table, and tells the listener
+    private synchronized void record(int round, Heat heat, List<Horse> placings) {
+        List<Standing> updated = new ArrayList<>();
+        for (int place = 0; place < placings.size(); place++) {
+            Horse horse = placings.get(place);
+            boolean won = place == 0 && heat.hasWinner();
+            Standing standing = standings.get(horse).add(round, placings.size() - 1 - place, won);
+            table.remove(standings.put(horse, standing));
+            table.add(standing);
+            updated.add(standing);
+        }
+        if (listener != null) {
+            listener.heatFinished(heat, Collections.unmodifiableList(updated));
+        }
+    }
+
+    /**
+     * Returns the standings so far: the horses that got furthest first, then
+     * the best placed in the last race they ran, then the most points, then
+     * the most wins. A horse gets a point for every horse it beats in a race.
+     *
+     * @return every horse in the pool, best first
+     */
+    public synchronized List<Standing> getStandings() {
+        return Collections.unmodifiableList(new ArrayList<>(table));
+    }
+
+    /**
+     * Returns the top of the standings so far, see getStandings.
+     *
+     * @param count the number of horses
+     * @return up to count horses, best first
+     */
+    public synchronized List<Standing> getLeaders(int count) {
+        List<Standing> leaders = new ArrayList<>(Math.min(count, table.size()));
+        for (Standing standing : table) {
+            if (leaders.size() == count) {
+                break;
+            }
+            leaders.add(standing);
+        }
+        return Collections.unmodifiableList(leaders);
+    }
+
+    private int raceCount(int horses) {
+        return (horses + laneCount - 1) / laneCount;
+    }
+
+    /**
+     * The result of one race of the season.
+     */
+    public static final class Heat {
+        private final String round;
+        private final int number;
+        private final List<String> placings;
+        private final boolean hasWinner;
+        private final int ticks;
+
+        Heat(String round, int number, List<String> placings, boolean hasWinner, int ticks) {
+            this.round = round;
+            this.number = number;
+            this.placings = Collections.unmodifiableList(placings);
+            this.hasWinner = hasWinner;
+            this.ticks = ticks;
+        }
+
+        public String getRound() {
+            return round;
+        }
+
+        public int getNumber() {
+            return number;
+        }
+
+        /**
+         * Returns the names of the horses in the order they finished: the
+         * winner, then the horses still standing, then the horses that fell,
+         * each furthest first.
+         *
+         * @return the names
+         */
+        public List<String> getPlacings() {
+            return placings;
+        }
+
+        public boolean hasWinner() {
+            return hasWinner;
+        }
+
+        public int getTicks() {
+            return ticks;
+        }
+
+        @Override
+        public String toString() {
+            return round + " race " + number + ": "
+                    + (hasWinner ? placings.get(0) + " won in " + ticks + " ticks" : "all horses fell");
+        }
+    }
+
+    /**
+     * One horse's place in the standings. Standings never change once made,
+     * so they can be handed to other threads.
+     */
+    public static final class Standing {
+        private final int id; // the horse's place in the pool, so horses with the same name stay apart
+        private final String name;
+        private final int round;
+        private final int races;
+        private final int wins;
+        private final int points;
+        private final int lastPoints;
+
+        Standing(int id, String name, int round, int races, int wins, int points, int lastPoints) {
+            this.id = id;
+            this.name = name;
+            this.round = round;
+            this.races = races;
+            this.wins = wins;
+            this.points = points;
+            this.lastPoints = lastPoints;
+        }
+
+        Standing add(int raceRound, int racePoints, boolean won) {
+            return new Standing(id, name, Math.max(round, raceRound), races + 1, wins + (won ? 1 : 0),
+                    points + racePoints, racePoints);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Returns the last round the horse raced in.
+         *
+         * @return the round, starting at 1, or 0 before its first race
+         */
+        public int getRound() {
+            return round;
+        }
+
+        public int getRaces() {
+            return races;
+        }
+
+        public int getWins() {
+            return wins;
+        }
+
+        public int getPoints() {
+            return points;
+        }
+
+        /**
+         * Returns the points from the last race the horse ran.
+         *
+         * @return the points
+         */
+        public int getLastPoints() {
+            return lastPoints;
+        }
+
+        @Override
+        public String toString() {
+            return name + " (round " + round + ", " + races + " races, " + wins + " wins, " + points + " points)";
+        }
+    }
+}
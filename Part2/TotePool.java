@@ -0,0 +1,348 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Pari-mutuel (tote) betting on one race, where the odds come from what
+ * people have actually bet rather than from the horses. There are three
+ * pools: WIN pays if the horse wins, PLACE if it comes first or second and
+ * SHOW if it comes in the first three. Everything staked in a pool, less the
+ * takeout, is shared between the bets that pay out, in proportion to their
+ * stakes.
+ *
+ * Each pool keeps a running total for every lane, and the pool's total as
+ * its last slot, updated with one atomic add per bet. So placing a bet costs
+ * the same however many bets there are, and the odds of any lane can be read
+ * at any time from two totals.
+ *
+ * Stakes are taken from the user when the bet is placed, in the same way as
+ * BettingLedger. At settlement the queued bets are taken off once to add up
+ * the final pools, the payout for each lane of each pool is worked out from
+ * those totals, and then every bet is paid in one pass, each user being
+ * credited once. Payouts are rounded down to whole pounds.
+ *
+ * @author Rahman Imtiaz
+ * @version 1.0
+ */
+
+public class TotePool {
+    public static final double DEFAULT_TAKEOUT = 0.15; // the share of each pool kept by the tote
+
+    /**
+     * The pools a bet can go in, and how many places each one pays on.
+     */
+    public enum Pool {
+        WIN(1), PLACE(2), SHOW(3);
+
+        private final int places;
+
+        Pool(int places) {
+            this.places = places;
+        }
+
+        public int getPlaces() {
+            return places;
+        }
+    }
+
+    private final int laneCount;
+    private final double takeout;
+    private final AtomicLongArray[] totals; // [pool][lane], with the pool's total after the last lane
+    private final ConcurrentLinkedQueue<Ticket> tickets = new ConcurrentLinkedQueue<>();
+    private volatile boolean closed;
+
+    /**
+     * Constructor for objects of class TotePool
+     *
+     * @param laneCount the number of horses in the race
+     * @param takeout   the share of each pool kept by the tote, from 0 to
+     *                  less than 1
+     */
+    public TotePool(int laneCount, double takeout) {
+        if (!(takeout >= 0 && takeout < 1)) {
+            throw new IllegalArgumentException("takeout must be from 0 to less than 1");
+        }
+        this.laneCount = laneCount;
+        this.takeout = takeout;
+        this.totals = new AtomicLongArray[Pool.values().length];
+        for (int pool = 0; pool < totals.length; pool++) {
+            totals[pool] = new AtomicLongArray(laneCount + 1);
+        }
+    }
+
+    public TotePool(int laneCount) {
+        this(laneCount, DEFAULT_TAKEOUT);
+    }
+
+    /**
+     * Places a bet, taking the stake from the user's balance.
+     *
+     * @param user  the user placing the bet
+     * @param pool  the pool the bet goes in
+     * @param lane  the lane of the horse the bet is on
+     * @param stake the amount bet, at least 1
+     * @return the bet, or null if the user's balance is less than the stake or
+     *         the race has already been settled
+     */
+    public Ticket placeBet(User user, Pool pool, int lane, int stake) {
+        if (stake < 1) {
+            throw new IllegalArgumentException("stake must be at least 1");
+        }
+        if (lane < 0 || lane >= laneCount) {
+            throw new IndexOutOfBoundsException("lane " + lane + " of " + laneCount);
+        }
+        if (closed || !user.tryDebit(stake)) {
+            return null;
+        }
+
+        Ticket ticket = new Ticket(user, pool, lane, stake);
+        AtomicLongArray poolTotals = totals[pool.ordinal()];
+        poolTotals.addAndGet(lane, stake);
+        poolTotals.addAndGet(laneCount, stake);
+        tickets.add(ticket);
+
+        // the pool may have been settled while the bet was being added; if the
+        // bet is still on the queue settle missed it, so take it back
+        if (closed && tickets.remove(ticket)) {
+            poolTotals.addAndGet(lane, -stake);
+            poolTotals.addAndGet(laneCount, -stake);
+            user.updateBalance(stake);
+            return null;
+        }
+        return ticket;
+    }
+
+    /**
+     * Returns the amount staked on a lane in a pool so far.
+     *
+     * @param pool the pool
+     * @param lane the lane
+     * @return the total stake
+     */
+    public long getStaked(Pool pool, int lane) {
+        return totals[pool.ordinal()].get(lane);
+    }
+
+    /**
+     * Returns the amount staked in a pool so far.
+     *
+     * @param pool the pool
+     * @return the total stake
+     */
+    public long getStaked(Pool pool) {
+        return totals[pool.ordinal()].get(laneCount);
+    }
+
+    /**
+     * Returns the odds a bet would be paid at if the race ended with the bets
+     * placed so far, as in "odds to 1". For WIN these are the exact odds. For
+     * PLACE and SHOW they also depend on which other horses are placed, so
+     * the other placed horses are taken to have the average stake of the
+     * rest of the field.
+     *
+     * @param pool the pool
+     * @param lane the lane
+     * @return the odds, or NaN if nothing has been bet on the lane
+     */
+    public double getOdds(Pool pool, int lane) {
+        AtomicLongArray poolTotals = totals[pool.ordinal()];
+        long staked = poolTotals.get(lane);
+        if (staked == 0) {
+            return Double.NaN;
+        }
+        long total = poolTotals.get(laneCount);
+        double others = 0;
+        if (laneCount > 1) {
+            others = (pool.places - 1) * (double) (total - staked) / (laneCount - 1);
+        }
+        double perUnit = payoutPerUnit(total, staked + others, pool.places, staked);
+        return Math.max(0, perUnit - 1);
+    }
+
+    // what each pound staked on a placed horse gets back, stake included
+    private double payoutPerUnit(double total, double placedStakes, int sharedBy, double staked) {
+        double profit = (total * (1 - takeout)) - placedStakes;
+        // a pool that has lost money to the takeout still gives the stakes back
+        return 1 + (Math.max(0, profit) / sharedBy / staked);
+    }
+
+    /**
+     * Settles every bet once the race is over. The bets in each pool on the
+     * horses placed in it share the pool, less the takeout: the profit is
+     * split equally between the placed horses that were bet on, then between
+     * their bets in proportion to the stakes. If no bet in a pool pays out,
+     * or every horse fell, the pool's stakes are given back. No more bets can
+     * be placed afterwards, and settling the pool again does nothing.
+     *
+     * As with BettingLedger, a payout too big for a user's balance is not
+     * capped: every other user is still paid and an ArithmeticException is
+     * thrown at the end.
+     *
+     * @param finishingOrder the lanes of the horses that finished, or were
+     *                       still standing, best first; empty if every horse
+     *                       fell
+     * @return the bets that were settled, or an empty list if the pool had
+     *         already been settled
+     * @throws ArithmeticException if a user's winnings would not fit in their
+     *                             balance
+     */
+    public synchronized List<Ticket> settle(int[] finishingOrder) {
+        if (closed) {
+            return Collections.emptyList();
+        }
+        closed = true;
+
+        // add up the final pools from the bets themselves, so a bet handed back
+        // at the last moment is never counted
+        List<Ticket> settled = new ArrayList<>();
+        long[][] finalTotals = new long[totals.length][laneCount + 1];
+        Ticket ticket;
+        while ((ticket = tickets.poll()) != null) {
+            finalTotals[ticket.pool.ordinal()][ticket.lane] += ticket.stake;
+            finalTotals[ticket.pool.ordinal()][laneCount] += ticket.stake;
+            settled.add(ticket);
+        }
+
+        // what each pound on each lane gets back, worked out once per lane
+        double[][] perUnit = new double[totals.length][laneCount];
+        for (Pool pool : Pool.values()) {
+            long[] poolTotals = finalTotals[pool.ordinal()];
+            long placedStakes = 0;
+            int placedWithBets = 0;
+            for (int place = 0; place < Math.min(pool.places, finishingOrder.length); place++) {
+                long staked = poolTotals[finishingOrder[place]];
+                placedStakes += staked;
+                placedWithBets += staked > 0 ? 1 : 0;
+            }
+            if (placedWithBets == 0) {
+                Arrays.fill(perUnit[pool.ordinal()], 1); // nobody wins, so every stake is given back
+                continue;
+            }
+            for (int place = 0; place < Math.min(pool.places, finishingOrder.length); place++) {
+                int lane = finishingOrder[place];
+                if (poolTotals[lane] > 0) {
+                    perUnit[pool.ordinal()][lane] = payoutPerUnit(poolTotals[laneCount], placedStakes,
+                            placedWithBets, poolTotals[lane]);
+                }
+            }
+        }
+
+        // pay every bet, adding up each user's winnings to credit them once each
+        Map<User, Long> payouts = new IdentityHashMap<>();
+        for (Ticket bet : settled) {
+            bet.payout = (long) Math.floor(bet.stake * perUnit[bet.pool.ordinal()][bet.lane]);
+            bet.settled = true;
+            if (bet.payout > 0) {
+                payouts.merge(bet.user, bet.payout, Long::sum);
+            }
+        }
+        int notPaid = 0;
+        for (Map.Entry<User, Long> payout : payouts.entrySet()) {
+            try {
+                payout.getKey().credit(payout.getValue());
+            } catch (ArithmeticException e) {
+                notPaid++; // the rest are still paid
+            }
+        }
+        if (notPaid > 0) {
+            throw new ArithmeticException(
+                    notPaid + " winning users could not be paid, their balance would go past " + Integer.MAX_VALUE);
+        }
+        return settled;
+    }
+
+    /**
+     * Works out the finishing order of a finished race for settle: the
+     * winner, then the horses still standing, furthest first and in lane
+     * order when level. Horses that fell are not placed.
+     *
+     * @param engine an engine whose race has finished
+     * @return the finishing order
+     */
+    public static int[] finishingOrder(RaceEngine engine) {
+        List<Integer> order = new ArrayList<>();
+        int winner = engine.getWinner();
+        if (winner == RaceEngine.NO_WINNER) {
+            return new int[0];
+        }
+        for (int lane = 0; lane < engine.getLaneCount(); lane++) {
+            if (lane != winner && !engine.hasFallen(lane)) {
+                order.add(lane);
+            }
+        }
+        order.sort((a, b) -> engine.getDistance(b) != engine.getDistance(a)
+                ? Integer.compare(engine.getDistance(b), engine.getDistance(a))
+                : Integer.compare(a, b));
+        order.add(0, winner);
+        int[] lanes = new int[order.size()];
+        for (int i = 0; i < lanes.length; i++) {
+            lanes[i] = order.get(i);
+        }
+        return lanes;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    public int getLaneCount() {
+        return laneCount;
+    }
+
+    public double getTakeout() {
+        return takeout;
+    }
+
+    /**
+     * One bet in a pool.
+     */
+    public static final class Ticket {
+        private final User user;
+        private final Pool pool;
+        private final int lane;
+        private final int stake;
+        private volatile boolean settled;
+        private volatile long payout;
+
+        Ticket(User user, Pool pool, int lane, int stake) {
+            this.user = user;
+            this.pool = pool;
+            this.lane = lane;
+            this.stake = stake;
+        }
+
+        public User getUser() {
+            return user;
+        }
+
+        public Pool getPool() {
+            return pool;
+        }
+
+        public int getLane() {
+            return lane;
+        }
+
+        public int getStake() {
+            return stake;
+        }
+
+        public boolean isSettled() {
+            return settled;
+        }
+
+        /**
+         * Returns what the bet paid back, stake included.
+         *
+         * @return the payout, or 0 if the bet lost or has not been settled
+         */
+        public long getPayout() {
+            return payout;
+        }
+    }
+}
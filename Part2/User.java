@@ -1,17 +1,20 @@
+import java.util.concurrent.atomic.AtomicInteger;
+
 public class User {
 
-    private int balance;
+    // changed with compare-and-set, as bets can be placed and settled from any thread
+    private final AtomicInteger balance;
     private int betAmount;
     private int horseSelected; //0, 1, 2
 
     public User(int balance) {
-        this.balance = balance;
+        this.balance = new AtomicInteger(balance);
         this.betAmount = 0;
         this.horseSelected = -1;
     }
 
     public int getBalance() {
-        return balance;
+        return balance.get();
     }
 
     public int getBetAmount() {
@@ -23,7 +26,7 @@ public class User {
     }
 
     public void setBalance(int balance) {
-        this.balance = balance;
+        this.balance.set(balance);
     }
 
     public void setBetAmount(int betAmount) {
@@ -35,7 +38,41 @@ public class User {
     }
 
     public void updateBalance(int amount) {
-        balance += amount;
+        credit(amount);
+    }
+
+    /**
+     * Adds an amount to the balance, or takes it away if it is negative.
+     *
+     * @param amount the amount to add
+     * @throws ArithmeticException if the balance would go past the largest
+     *                             (or smallest) int, in which case it is
+     *                             left as it was
+     */
+    public void credit(long amount) {
+        int current;
+        int updated;
+        do {
+            current = balance.get();
+            updated = Math.toIntExact(Math.addExact(current, amount));
+        } while (!balance.compareAndSet(current, updated));
+    }
+
+    /**
+     * Takes an amount from the balance, unless the balance is less than it.
+     *
+     * @param amount the amount to take
+     * @return true if it was taken
+     */
+    public boolean tryDebit(int amount) {
+        int current;
+        do {
+            current = balance.get();
+            if (current < amount) {
+                return false;
+            }
+        } while (!balance.compareAndSet(current, current - amount));
+        return true;
     }
 
     public void placeBet(int amount, int horseSelected) {
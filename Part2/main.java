@@ -8,6 +8,7 @@
 public class main {
 
     public static void main(String[] args) {
+        AssetCache.preload(); // load the breed pictures while the window is set up
         Race theRace = new Race(20);
         theRace.startRaceGUI();
         